@@ -1,17 +1,37 @@
 package manticore;
 
+import java.io.Flushable;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.xml.bind.JAXBException;
 import manticore.business.BusinessController;
+import manticore.business.LazyBusiness;
+import manticore.data.EventJournal;
+import manticore.data.JAXBContextCache;
 import manticore.data.JAXBDataController;
+import manticore.event.RingBuffer;
 import manticore.presentation.PresentationController;
 
 /**
  * Application represents a Java application using the 3-tier design pattern.
+ * Several applications can run isolated in the same process, each one with its own data, business and
+ * presentation controllers, while sharing the immutable metadata, like JAXB contexts and the annotated
+ * methods of commands and views.
  * @author hector
  */
 public class Application
 {
+    /**
+     * Default maximum time that the shutdown can take, in milliseconds
+     */
+    private static final long SHUTDOWN_TIMEOUT = 5000;
+    
     /**
      * The controller of the application data layer
      */
@@ -27,6 +47,56 @@ public class Application
      */
     private List<PresentationController> presentations;
     
+    /**
+     * The ring buffer that transports the business events to the presentation layer, if any
+     */
+    private RingBuffer transport;
+    
+    /**
+     * The journal that records the business events, if any
+     */
+    private EventJournal journal;
+    
+    /**
+     * The orchestrator used to start the application in parallel, if any
+     */
+    private StartupOrchestrator startup;
+    
+    /**
+     * Classes of the business controllers waiting to be constructed on a parallel startup
+     */
+    private List<Class<? extends BusinessController>> pendingBusiness;
+    
+    /**
+     * The business controllers constructed on first use
+     */
+    private List<LazyBusiness> lazyBusiness;
+    
+    /**
+     * Tells whether the lazy business controllers are constructed in background after initialization
+     */
+    private boolean isPrewarmEnabled;
+    
+    /**
+     * The groups of classes bound by the data controller, whose JAXB contexts are created on warm-up
+     */
+    private List<Class[]> boundClasses;
+    
+    /**
+     * Tells whether the warm-up runs in background after initialization
+     */
+    private boolean isWarmUpEnabled;
+    
+    /**
+     * Additional hooks run on every phase of the shutdown
+     */
+    private Map<ShutdownPhase, List<Runnable>> shutdownHooks;
+    
+    /**
+     * Tells whether the application has been shut down
+     */
+    private AtomicBoolean isShutdown;
+    
     /**
      * Application constructor.
      * @param appPkg Application package used to find the business controllers
@@ -35,20 +105,337 @@ public class Application
     {
         business = new ArrayList();
         presentations = new ArrayList();
+        pendingBusiness = new ArrayList();
+        lazyBusiness = new ArrayList();
+        isPrewarmEnabled = false;
+        boundClasses = new ArrayList();
+        isWarmUpEnabled = false;
+        shutdownHooks = new EnumMap(ShutdownPhase.class);
+        isShutdown = new AtomicBoolean(false);
+        
+        for(ShutdownPhase phase : ShutdownPhase.values())
+            shutdownHooks.put(phase, new CopyOnWriteArrayList());
+    }
+    
+    /**
+     * Enables the parallel startup using as many threads as available processors.
+     */
+    public void enableParallelStartup()
+    {
+        enableParallelStartup(Runtime.getRuntime().availableProcessors());
+    }
+    
+    /**
+     * Enables the parallel startup using the given number of threads.
+     * From now on, the business controllers added by class are constructed in parallel on initialization,
+     * respecting their DependsOn annotations, and the presentation controllers are initialized in parallel.
+     * @param threads Number of threads used to start the application
+     */
+    public void enableParallelStartup(int threads)
+    {
+        startup = new StartupOrchestrator(threads);
+    }
+    
+    /**
+     * Returns the timeline of the last parallel startup.
+     * @return The startup timeline report, or null if the parallel startup is not enabled
+     */
+    public String getStartupReport()
+    {
+        if(startup == null)
+            return null;
+        
+        return startup.getReport();
     }
     
     /**
      * Initializes the application.
      * This method basically initializes the presentation layer which can start making requests to the
      * business.
+     * @throws manticore.business.BusinessException If a business controller cannot be constructed on a
+     * parallel startup
      */
     public void init()
+    {
+        if(startup != null) {
+            List<Class<? extends BusinessController>> classes = new ArrayList(pendingBusiness);
+            pendingBusiness.clear();
+            
+            startup.start(this, classes, data, presentations);
+            Debug.println(startup.getReport());
+        }
+        else {
+            try {
+                for(PresentationController presentation : presentations)
+                    presentation.init();
+            }
+            catch(Exception e) {
+                if(Debug.isEnabled())
+                    e.printStackTrace();
+            }
+        }
+        
+        if(isWarmUpEnabled)
+            startWarmUp();
+        
+        if(isPrewarmEnabled)
+            prewarmBusiness();
+    }
+    
+    /**
+     * Declares classes that the data controller binds together to load or save data, so their JAXB
+     * context can be created on warm-up. They must be the same classes, in the same order, used when loading
+     * or saving the data.
+     * @param boundClasses Classes that JAXB has to take into account
+     */
+    public void addBoundClasses(Class... boundClasses)
+    {
+        this.boundClasses.add(boundClasses);
+    }
+    
+    /**
+     * Enables the warm-up in background once the application has been initialized, so the first user
+     * action runs as fast as the following ones. The warm-up runs while the presentation controllers
+     * welcome the user and wait for the first input.
+     */
+    public void enableWarmUp()
+    {
+        isWarmUpEnabled = true;
+    }
+    
+    /**
+     * Warms up the application on the current thread: creates the JAXB contexts of the declared bound
+     * classes and lets every presentation controller warm itself up.
+     */
+    public void warmUp()
+    {
+        long start = System.nanoTime();
+        
+        for(Class[] classes : boundClasses) {
+            try {
+                JAXBContextCache.get(classes);
+            }
+            catch(JAXBException e) {
+                if(Debug.isEnabled())
+                    e.printStackTrace();
+            }
+        }
+        
+        for(PresentationController presentation : presentations) {
+            try {
+                presentation.warmUp();
+            }
+            catch(RuntimeException e) {
+                if(Debug.isEnabled())
+                    e.printStackTrace();
+            }
+        }
+        
+        Debug.println("Warm-up finished in " + Utils.timeString(System.nanoTime() - start));
+    }
+    
+    /**
+     * Starts the warm-up in a background thread.
+     */
+    private void startWarmUp()
+    {
+        Thread thread = new Thread("manticore-warmup") {
+            @Override
+            public void run() {
+                warmUp();
+            }
+        };
+        
+        thread.setDaemon(true);
+        thread.start();
+    }
+    
+    /**
+     * Enables the construction in background of the lazy business controllers once the application has
+     * been initialized, so they are ready before the user needs them without delaying the startup.
+     */
+    public void enableBusinessPrewarm()
+    {
+        isPrewarmEnabled = true;
+    }
+    
+    /**
+     * Constructs in a background thread the lazy business controllers that have not been used yet.
+     */
+    public void prewarmBusiness()
+    {
+        final List<LazyBusiness> lazies = new ArrayList(lazyBusiness);
+        
+        Thread thread = new Thread("manticore-prewarm") {
+            @Override
+            public void run() {
+                for(LazyBusiness lazy : lazies) {
+                    try {
+                        lazy.get();
+                    }
+                    catch(RuntimeException e) {
+                        if(Debug.isEnabled())
+                            e.printStackTrace();
+                    }
+                }
+            }
+        };
+        
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.start();
+    }
+    
+    /**
+     * Adds a hook that is run on the given phase of the shutdown, after the built-in steps of the phase.
+     * @param phase The phase of the shutdown
+     * @param hook The hook to run
+     */
+    public void addShutdownHook(ShutdownPhase phase, Runnable hook)
+    {
+        shutdownHooks.get(phase).add(hook);
+    }
+    
+    /**
+     * Shuts down the application when the JVM exits, for instance when the user presses Ctrl-C.
+     */
+    public void enableShutdownOnExit()
+    {
+        Runtime.getRuntime().addShutdownHook(new Thread("manticore-shutdown") {
+            @Override
+            public void run() {
+                shutdown();
+            }
+        });
+    }
+    
+    /**
+     * Shuts down the application with the default timeout.
+     * @return True if every phase finished in time, false otherwise
+     * @see #shutdown(long)
+     */
+    public boolean shutdown()
+    {
+        return shutdown(SHUTDOWN_TIMEOUT);
+    }
+    
+    /**
+     * Shuts down the application running its phases in order: the presentation controllers stop accepting
+     * input, the pending events are delivered, the data controller is flushed if it is Flushable and the
+     * event journal is closed and, finally, the presentation controllers are disposed. Each phase gets the
+     * time left until the deadline; once the deadline has passed, the remaining phases are skipped.
+     * Only the first call shuts down the application, the next ones do nothing.
+     * @param timeout Maximum time that the shutdown can take, in milliseconds
+     * @return True if every phase finished in time, false otherwise
+     */
+    public boolean shutdown(long timeout)
+    {
+        if(! isShutdown.compareAndSet(false, true))
+            return true;
+        
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        
+        for(ShutdownPhase phase : ShutdownPhase.values()) {
+            if(! runShutdownPhase(phase, deadline)) {
+                Debug.println("Shutdown deadline exceeded on phase " + phase + ".");
+                return false;
+            }
+        }
+        
+        return true;
+    }
+    
+    /**
+     * Runs a phase of the shutdown on its own thread, waiting for it until the deadline.
+     * @param phase The phase of the shutdown
+     * @param deadline The deadline of the shutdown, in nanoseconds
+     * @return True if the phase finished before the deadline, false otherwise
+     */
+    private boolean runShutdownPhase(final ShutdownPhase phase, final long deadline)
+    {
+        Thread thread = new Thread("manticore-shutdown-" + phase.name().toLowerCase()) {
+            @Override
+            public void run() {
+                runBuiltInShutdownSteps(phase, deadline);
+                
+                for(Runnable hook : shutdownHooks.get(phase)) {
+                    try {
+                        hook.run();
+                    }
+                    catch(RuntimeException e) {
+                        if(Debug.isEnabled())
+                            e.printStackTrace();
+                    }
+                }
+            }
+        };
+        
+        thread.setDaemon(true);
+        thread.start();
+        
+        try {
+            thread.join(Math.max(1, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime())));
+        }
+        catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        
+        return ! thread.isAlive();
+    }
+    
+    /**
+     * Runs the built-in steps of a phase of the shutdown.
+     * @param phase The phase of the shutdown
+     * @param deadline The deadline of the shutdown, in nanoseconds
+     */
+    private void runBuiltInShutdownSteps(ShutdownPhase phase, long deadline)
     {
         try {
-            for(PresentationController presentation : presentations)
-                presentation.init();
+            switch(phase) {
+                case INPUT:
+                    for(PresentationController presentation : presentations)
+                        presentation.stopInput();
+                    break;
+                    
+                case EVENTS:
+                    for(BusinessController controller : business)
+                        controller.drain(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                    
+                    for(LazyBusiness lazy : lazyBusiness) {
+                        if(lazy.isCreated())
+                            lazy.get().drain(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                    }
+                    
+                    if(transport != null)
+                        transport.drain(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                    break;
+                    
+                case DATA:
+                    // DataController saves synchronously, so only the data controllers that buffer their
+                    // writes and implement Flushable have something to flush
+                    try {
+                        if(data instanceof Flushable)
+                            ((Flushable) data).flush();
+                    }
+                    finally {
+                        if(journal != null)
+                            journal.close();
+                    }
+                    break;
+                    
+                case VIEWS:
+                    for(PresentationController presentation : presentations)
+                        presentation.dispose();
+                    break;
+            }
+        }
+        catch(InterruptedException e) {
+            Debug.println("Shutdown interrupted on phase " + phase + ".");
+        }
+        catch(IOException e) {
+            Debug.println("Unable to flush the data layer or the event journal: " + e.getMessage());
         }
-        catch(Exception e) {
+        catch(RuntimeException e) {
             if(Debug.isEnabled())
                 e.printStackTrace();
         }
@@ -64,6 +451,33 @@ public class Application
         this.data = data;
     }
     
+    /**
+     * Sets a ring buffer as the transport of the business events to the presentation layer.
+     * Every presentation controller added from now on consumes the events from the ring buffer on its own
+     * thread, instead of receiving them on the thread of the business controller that notifies them.
+     * @param transport The ring buffer that transports the events
+     */
+    public void setEventTransport(RingBuffer transport)
+    {
+        this.transport = transport;
+    }
+    
+    /**
+     * Sets a journal that records every event notified by the business controllers.
+     * It listens to the business controllers already added and to the ones added from now on.
+     * @param journal The event journal
+     */
+    public void setEventJournal(EventJournal journal)
+    {
+        this.journal = journal;
+        
+        for(BusinessController controller : business)
+            controller.addListener(journal);
+        
+        for(LazyBusiness lazy : lazyBusiness)
+            lazy.addListener(journal);
+    }
+    
     /**
      * Adds a presentation controller to the presentation layer.
      * This operation injects the business controllers of the application to the presentation controller.
@@ -72,18 +486,31 @@ public class Application
     public void addPresentation(PresentationController presentation)
     {
         presentations.add(presentation);
+        presentation.setApplication(this);
+        
+        if(transport != null)
+            presentation.setEventTransport(transport);
         
         for(BusinessController controller : business)
             presentation.addBusinessController(controller);
+        
+        for(LazyBusiness lazy : lazyBusiness)
+            presentation.addLazyBusinessController(lazy);
     }
     
     /**
      * Uses reflection to add business controllers to the business layer dinamically!
      * Every controller is injected with the data controller when constructed.
+     * If the parallel startup is enabled, the controller is constructed when the application is initialized.
      * @param controllerClass Class of the business controller
      */
     public void addBusiness(Class<? extends BusinessController> controllerClass)
     {
+        if(startup != null) {
+            pendingBusiness.add(controllerClass);
+            return;
+        }
+        
         try
         {
             BusinessController controller = (BusinessController) controllerClass.getConstructor(
@@ -97,6 +524,20 @@ public class Application
         }
     }
     
+    /**
+     * Adds a business controller that is constructed, with the data controller injected, the first time
+     * that a presentation controller uses it. The data controller must be set beforehand.
+     * @param controllerClass Class of the business controller
+     */
+    public void addLazyBusiness(Class<? extends BusinessController> controllerClass)
+    {
+        LazyBusiness lazy = new LazyBusiness(controllerClass, data);
+        lazyBusiness.add(lazy);
+        
+        if(journal != null)
+            lazy.addListener(journal);
+    }
+    
     /**
      * Add a controller in the business layer without using reflection.
      * @param controller The business controller
@@ -104,5 +545,8 @@ public class Application
     public void addBusiness(BusinessController controller)
     {
         business.add(controller);
+        
+        if(journal != null)
+            controller.addListener(journal);
     }
 }
@@ -5,10 +5,30 @@ import java.util.Map;
 
 /**
  * Simple class that can be used to map booleans to strings.
+ * The options of its schema are held as bits of a long, so they are set and checked without allocating
+ * nor boxing. Any other option is mapped by name.
  * @author hector
  */
 public class Options
 {
+    /**
+     * The options held as bits
+     */
+    private OptionsSchema schema;
+    
+    /**
+     * Bits of the options of the schema that are enabled
+     */
+    private long enabled;
+    
+    /**
+     * Bits of the options of the schema that have been defined, enabled or disabled
+     */
+    private long defined;
+    
+    /**
+     * The options that are not in the schema, or null if none has been defined
+     */
     private Map<String, Boolean> options;
     
     /**
@@ -16,7 +36,18 @@ public class Options
      */
     public Options()
     {
-        options = new HashMap();
+        this(OptionsSchema.EMPTY);
+    }
+    
+    /**
+     * Creates an instance where all the options of the given schema are disabled.
+     * @param schema The options held as bits
+     */
+    public Options(OptionsSchema schema)
+    {
+        this.schema = schema;
+        enabled = 0;
+        defined = schema.getMask();
     }
     
     /**
@@ -25,7 +56,22 @@ public class Options
      */
     public void enable(String option)
     {
-        options.put(option, Boolean.TRUE);
+        int index = schema.indexOf(option);
+        
+        if(index >= 0)
+            enable(index);
+        else
+            getOptions().put(option, Boolean.TRUE);
+    }
+    
+    /**
+     * Enables an option of the schema.
+     * @param index Index of the option in the schema
+     */
+    public void enable(int index)
+    {
+        enabled |= 1L << index;
+        defined |= 1L << index;
     }
     
     /**
@@ -34,7 +80,14 @@ public class Options
      */
     public void disable(String option)
     {
-        options.put(option, Boolean.FALSE);
+        int index = schema.indexOf(option);
+        
+        if(index >= 0) {
+            enabled &= ~(1L << index);
+            defined |= 1L << index;
+        }
+        else
+            getOptions().put(option, Boolean.FALSE);
     }
     
     /**
@@ -43,17 +96,43 @@ public class Options
      * @return True if option is enabled, false otherwise
      */
     public boolean isEnabled(String option) {
-        if(options.containsKey(option))
+        int index = schema.indexOf(option);
+        
+        if(index >= 0)
+            return isEnabled(index);
+        
+        if(options != null && options.containsKey(option))
             return options.get(option);
         
         return false;
     }
     
+    /**
+     * Tells whether an option of the schema is enabled or not.
+     * @param index Index of the option in the schema
+     * @return True if option is enabled, false otherwise
+     */
+    public boolean isEnabled(int index) {
+        return (enabled & (1L << index)) != 0;
+    }
+    
     /**
      * Tells whether the instance has at least one option defined.
      * @return True if some option has been defined, false otherwise.
      */
     public boolean hasOptions() {
-        return !options.isEmpty();
+        return defined != 0 || (options != null && !options.isEmpty());
+    }
+    
+    /**
+     * Returns the map of the options that are not in the schema, creating it the first time.
+     * @return The map of the options that are not in the schema
+     */
+    private Map<String, Boolean> getOptions()
+    {
+        if(options == null)
+            options = new HashMap();
+        
+        return options;
     }
 }
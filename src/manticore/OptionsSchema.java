@@ -0,0 +1,90 @@
+package manticore;
+
+/**
+ * The options that a command accepts, each of them identified by a bit index, so a set of options can be
+ * held in a long. Only the first 64 options get an index.
+ * @author hector
+ */
+public class OptionsSchema
+{
+    /**
+     * Maximum number of options with an index
+     */
+    public static final int MAX_OPTIONS = 64;
+    
+    /**
+     * Schema without options
+     */
+    public static final OptionsSchema EMPTY = new OptionsSchema();
+    
+    /**
+     * Names of the options, by index
+     */
+    private String[] names;
+    
+    /**
+     * Creates a new schema of the given options, indexed in the given order.
+     * @param names Names of the options
+     */
+    public OptionsSchema(String... names)
+    {
+        this.names = names.clone();
+    }
+    
+    /**
+     * Gets the number of options with an index.
+     * @return The number of options with an index
+     */
+    public int size()
+    {
+        return Math.min(names.length, MAX_OPTIONS);
+    }
+    
+    /**
+     * Gets the bits of all the options with an index.
+     * @return A long with the bit of every option with an index set
+     */
+    public long getMask()
+    {
+        return size() == MAX_OPTIONS ? -1L : (1L << size()) - 1;
+    }
+    
+    /**
+     * Gets the name of an option.
+     * @param index Index of the option
+     * @return The name of the option
+     */
+    public String getName(int index)
+    {
+        return names[index];
+    }
+    
+    /**
+     * Gets the index of an option.
+     * @param name Name of the option
+     * @return The index of the option, or -1 if the option has no index
+     */
+    public int indexOf(String name)
+    {
+        return indexOf(name, 0, name.length());
+    }
+    
+    /**
+     * Gets the index of an option whose name is part of a string, without extracting it.
+     * @param s The string
+     * @param start Position where the name starts
+     * @param end Position after the end of the name
+     * @return The index of the option, or -1 if the option has no index
+     */
+    public int indexOf(String s, int start, int end)
+    {
+        int length = end - start;
+        
+        for(int i = 0; i < size(); i++) {
+            if(names[i].length() == length && s.regionMatches(start, names[i], 0, length))
+                return i;
+        }
+        
+        return -1;
+    }
+}
@@ -0,0 +1,28 @@
+package manticore;
+
+/**
+ * Ordered phases of the shutdown of an Application.
+ * @author hector
+ */
+public enum ShutdownPhase
+{
+    /**
+     * The presentation controllers stop accepting user input
+     */
+    INPUT,
+    
+    /**
+     * The pending events are delivered to their listeners
+     */
+    EVENTS,
+    
+    /**
+     * The data layer writes any buffered data, if it implements Flushable, and the event journal is closed
+     */
+    DATA,
+    
+    /**
+     * The presentation controllers close their views and streams
+     */
+    VIEWS
+}
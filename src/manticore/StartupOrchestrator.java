@@ -0,0 +1,325 @@
+package manticore;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import manticore.business.BusinessController;
+import manticore.business.BusinessException;
+import manticore.business.annotation.DependsOn;
+import manticore.data.JAXBDataController;
+import manticore.presentation.PresentationController;
+
+/**
+ * Starts an application using several threads.
+ * Business controllers are constructed in parallel, waiting only for the controllers declared with the
+ * DependsOn annotation, and then every presentation controller receives its business controllers and is
+ * initialized in parallel with the others. Every step is recorded in a timeline that can be reported.
+ * @author hector
+ */
+public class StartupOrchestrator
+{
+    /**
+     * Number of threads used to start the application
+     */
+    private int threads;
+    
+    /**
+     * Steps of the startup that have finished
+     */
+    private List<Step> timeline;
+    
+    /**
+     * Time when the startup began, in nanoseconds
+     */
+    private long startTime;
+    
+    /**
+     * Creates a new StartupOrchestrator that uses the given number of threads.
+     * @param threads Number of threads used to start the application
+     */
+    public StartupOrchestrator(int threads)
+    {
+        this.threads = threads;
+        timeline = Collections.synchronizedList(new ArrayList());
+    }
+    
+    /**
+     * Constructs the business controllers of the given classes and initializes the presentation
+     * controllers, adding the constructed business controllers to every presentation controller.
+     * @param application The application that is starting
+     * @param classes Classes of the business controllers to construct
+     * @param data The data controller injected to the business controllers
+     * @param presentations The presentation controllers to initialize
+     * @throws BusinessException If a business controller cannot be constructed, in which case no
+     * presentation controller is initialized
+     */
+    public void start(Application application, List<Class<? extends BusinessController>> classes,
+            JAXBDataController data, List<PresentationController> presentations)
+    {
+        startTime = System.nanoTime();
+        timeline.clear();
+        
+        ExecutorService executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            private AtomicInteger count = new AtomicInteger();
+            
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "manticore-startup-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                
+                return thread;
+            }
+        });
+        
+        try {
+            List<BusinessController> controllers = construct(executor, classes, data);
+            
+            for(BusinessController controller : controllers)
+                application.addBusiness(controller);
+            
+            init(executor, presentations, controllers);
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+    
+    /**
+     * Returns a report of the startup timeline, one line per step: its start and duration relative to
+     * the beginning of the startup, the thread that ran it and its name.
+     * @return The startup timeline report
+     */
+    public String getReport()
+    {
+        List<Step> steps;
+        
+        synchronized(timeline) {
+            steps = new ArrayList(timeline);
+        }
+        
+        StringBuilder report = new StringBuilder("Startup timeline:");
+        
+        for(Step step : steps) {
+            report.append("\n    +").append(Utils.padRight(Utils.timeString(step.start - startTime), 16));
+            report.append(Utils.padRight(Utils.timeString(step.end - step.start), 16));
+            report.append(Utils.padRight(step.thread, 24)).append(step.name);
+        }
+        
+        return report.toString();
+    }
+    
+    /**
+     * Constructs the business controllers in parallel, respecting their declared dependencies.
+     * A controller whose dependency cannot be constructed is not constructed either.
+     * @param executor The executor that runs the construction
+     * @param classes Classes of the business controllers to construct
+     * @param data The data controller injected to the business controllers
+     * @return The constructed business controllers, in the same order as the classes
+     * @throws BusinessException If a business controller cannot be constructed
+     */
+    private List<BusinessController> construct(ExecutorService executor,
+            List<Class<? extends BusinessController>> classes, final JAXBDataController data)
+    {
+        final Map<Class, FutureTask<BusinessController>> futures = new HashMap();
+        List<Class<? extends BusinessController>> sorted = sort(classes);
+        
+        // All the tasks are created before any of them runs, so they only read the map of futures
+        for(final Class<? extends BusinessController> controllerClass : sorted) {
+            futures.put(controllerClass, new FutureTask(new Callable<BusinessController>() {
+                @Override
+                public BusinessController call() throws Exception {
+                    for(Class dependency : getDependencies(controllerClass)) {
+                        if(futures.containsKey(dependency))
+                            futures.get(dependency).get();
+                    }
+                    
+                    long start = System.nanoTime();
+                    
+                    try {
+                        return controllerClass.getConstructor(JAXBDataController.class).newInstance(data);
+                    }
+                    finally {
+                        record("business " + controllerClass.getSimpleName(), start);
+                    }
+                }
+            }));
+        }
+        
+        // Dependencies are submitted first, so a task never waits for a task queued behind it
+        for(Class controllerClass : sorted)
+            executor.execute(futures.get(controllerClass));
+        
+        List<BusinessController> controllers = new ArrayList();
+        
+        for(Class controllerClass : classes) {
+            try {
+                controllers.add(futures.get(controllerClass).get());
+            }
+            catch(ExecutionException e) {
+                for(Future future : futures.values())
+                    future.cancel(true);
+                
+                Throwable cause = e.getCause() instanceof InvocationTargetException ?
+                        e.getCause().getCause() : e.getCause();
+                
+                throw new BusinessException("Unable to construct the business controller " +
+                        controllerClass.getSimpleName(), cause);
+            }
+            catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new BusinessException("Startup interrupted", e);
+            }
+        }
+        
+        return controllers;
+    }
+    
+    /**
+     * Adds the business controllers to the presentation controllers and initializes them in parallel.
+     * @param executor The executor that runs the initialization
+     * @param presentations The presentation controllers to initialize
+     * @param controllers The business controllers to add to every presentation controller
+     */
+    private void init(ExecutorService executor, List<PresentationController> presentations,
+            final List<BusinessController> controllers)
+    {
+        List<Future> futures = new ArrayList();
+        
+        for(final PresentationController presentation : presentations) {
+            futures.add(executor.submit(new Callable<Object>() {
+                @Override
+                public Object call() {
+                    long start = System.nanoTime();
+                    
+                    try {
+                        for(BusinessController controller : controllers)
+                            presentation.addBusinessController(controller);
+                        
+                        presentation.init();
+                    }
+                    finally {
+                        record("presentation " + presentation.getClass().getSimpleName(), start);
+                    }
+                    
+                    return null;
+                }
+            }));
+        }
+        
+        for(Future future : futures) {
+            try {
+                future.get();
+            }
+            catch(ExecutionException e) {
+                if(Debug.isEnabled())
+                    e.getCause().printStackTrace();
+            }
+            catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+    
+    /**
+     * Sorts the classes of the business controllers so every controller comes after its dependencies.
+     * @param classes Classes of the business controllers
+     * @return The sorted classes
+     */
+    private List<Class<? extends BusinessController>> sort(List<Class<? extends BusinessController>> classes)
+    {
+        List<Class<? extends BusinessController>> sorted = new ArrayList();
+        Set<Class> visited = new HashSet();
+        
+        for(Class<? extends BusinessController> controllerClass : classes)
+            visit(controllerClass, classes, visited, new HashSet(), sorted);
+        
+        return sorted;
+    }
+    
+    /**
+     * Visits a class of business controller in depth, adding its dependencies before it.
+     * @param controllerClass Class of the business controller to visit
+     * @param classes Classes of the business controllers to construct
+     * @param visited Classes already sorted
+     * @param path Classes being visited, used to detect cycles
+     * @param sorted The sorted classes
+     */
+    private void visit(Class<? extends BusinessController> controllerClass,
+            List<Class<? extends BusinessController>> classes, Set<Class> visited, Set<Class> path,
+            List<Class<? extends BusinessController>> sorted)
+    {
+        if(visited.contains(controllerClass))
+            return;
+        
+        if(! path.add(controllerClass))
+            throw new BusinessException("Cyclic dependency on business controller " +
+                    controllerClass.getSimpleName());
+        
+        for(Class<? extends BusinessController> dependency : getDependencies(controllerClass)) {
+            if(classes.contains(dependency))
+                visit(dependency, classes, visited, path, sorted);
+        }
+        
+        path.remove(controllerClass);
+        visited.add(controllerClass);
+        sorted.add(controllerClass);
+    }
+    
+    /**
+     * Returns the declared dependencies of a class of business controller.
+     * @param controllerClass Class of the business controller
+     * @return The classes of the business controllers that it depends on
+     */
+    private Class<? extends BusinessController>[] getDependencies(Class controllerClass)
+    {
+        DependsOn dependsOn = (DependsOn) controllerClass.getAnnotation(DependsOn.class);
+        
+        if(dependsOn == null)
+            return new Class[0];
+        
+        return dependsOn.value();
+    }
+    
+    /**
+     * Records a finished step in the timeline.
+     * @param name Name of the step
+     * @param start Time when the step started, in nanoseconds
+     */
+    private void record(String name, long start)
+    {
+        timeline.add(new Step(name, Thread.currentThread().getName(), start, System.nanoTime()));
+    }
+    
+    /**
+     * A finished step of the startup.
+     */
+    private static class Step
+    {
+        private String name;
+        private String thread;
+        private long start;
+        private long end;
+        
+        private Step(String name, String thread, long start, long end)
+        {
+            this.name = name;
+            this.thread = thread;
+            this.start = start;
+            this.end = end;
+        }
+    }
+}
@@ -86,7 +86,7 @@ public class Utils
         
         for(Object element : collection) {
             result += sep + element.toString();
-            sep = ", ";
+            sep = separator;
         }
         
         return result;
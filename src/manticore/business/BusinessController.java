@@ -1,11 +1,16 @@
 package manticore.business;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.CopyOnWriteArrayList;
 import manticore.Event;
 import manticore.Observable;
 import manticore.Observer;
 import manticore.data.JAXBDataController;
+import manticore.event.Drainable;
+import manticore.event.OverflowPolicy;
+import manticore.event.QueuedObserver;
+import manticore.event.WeakObserver;
+import manticore.metrics.EventMetrics;
 
 /**
  * Represents a controller of the application business layer.
@@ -22,8 +27,9 @@ abstract public class BusinessController implements Observable
     /**
      * List of the current business controller listeners.
      * These are normally controllers of the application presentation layer.
+     * A copy-on-write list is used so notifications never lock and never see concurrent modifications.
      */
-    private List<Observer> listeners;
+    private CopyOnWriteArrayList<Observer> listeners;
     
     /**
      * Creates a new business controllers with the given data controller.
@@ -32,27 +38,107 @@ abstract public class BusinessController implements Observable
     public BusinessController(JAXBDataController data)
     {
         this.data = data;
-        listeners = new ArrayList();
+        listeners = new CopyOnWriteArrayList();
     }
     
     /**
-     * Adds a listener to the current controller listeners
+     * Adds a listener to the current controller listeners.
+     * Adding a listener that is already listening, as told by equals, has no effect, so an observer
+     * registered through several paths, like the ring buffer of an event transport, is notified once per
+     * event. Observers that must be notified more than once have to be added as different instances.
      * @param obs The Observer that wants to listen to the business controller
      */
     @Override
     public void addListener(Observer obs)
     {
-        listeners.add(obs);
+        listeners.addIfAbsent(obs);
+    }
+    
+    /**
+     * Adds a listener that is held through a weak reference.
+     * The listener does not prevent its garbage collection and it is purged automatically once collected.
+     * @param obs The Observer that wants to listen to the business controller
+     */
+    public void addWeakListener(Observer obs)
+    {
+        listeners.add(new WeakObserver(obs));
+    }
+    
+    /**
+     * Adds a listener that receives the events asynchronously through a bounded queue.
+     * The publisher is never slowed down by the listener unless the BLOCK policy is used, and the events
+     * that do not fit in the queue are handled according to the given policy.
+     * @param obs The Observer that wants to listen to the business controller
+     * @param capacity Maximum number of events pending to be delivered to the listener
+     * @param policy Policy applied when the queue of the listener is full
+     * @return The queued observer, which keeps the counters of dropped and coalesced events
+     */
+    public QueuedObserver addListener(Observer obs, int capacity, OverflowPolicy policy)
+    {
+        QueuedObserver queued = new QueuedObserver(obs, capacity, policy);
+        listeners.add(queued);
+        
+        return queued;
+    }
+    
+    /**
+     * Removes a listener from the current controller listeners, however it was added.
+     * @param obs The Observer to remove
+     */
+    public void removeListener(Observer obs)
+    {
+        for(Observer o : listeners) {
+            if(o == obs || (o instanceof WeakObserver && ((WeakObserver) o).get() == obs))
+                listeners.remove(o);
+            
+            else if(o instanceof QueuedObserver && ((QueuedObserver) o).getObserver() == obs) {
+                listeners.remove(o);
+                ((QueuedObserver) o).close();
+            }
+        }
+    }
+    
+    /**
+     * Waits until the listeners that receive the events asynchronously have received the pending ones.
+     * Those listeners stop accepting events afterwards.
+     * @param timeout Maximum time to wait
+     * @param unit Unit of the timeout
+     * @return True if all the pending events have been delivered, false if the timeout elapsed
+     * @throws InterruptedException If interrupted while waiting
+     */
+    public boolean drain(long timeout, TimeUnit unit) throws InterruptedException
+    {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        boolean isDrained = true;
+        
+        for(Observer o : listeners) {
+            if(o instanceof Drainable)
+                isDrained &= ((Drainable) o).drain(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+        }
+        
+        return isDrained;
     }
     
     /**
      * Notifies an event to all the business controller listeners a related data.
+     * Weak listeners that have been garbage collected are purged.
      * @param event Event to be notified
      */
     @Override
     public void notify(Event event)
     {
-        for(Observer o : listeners)
-            o.notify(event);
+        EventMetrics.published(event);
+        
+        try {
+            for(Observer o : listeners) {
+                if(o instanceof WeakObserver && ((WeakObserver) o).isCollected())
+                    listeners.remove(o);
+                else
+                    o.notify(event);
+            }
+        }
+        finally {
+            EventMetrics.clearPublishTime();
+        }
     }
 }
@@ -0,0 +1,112 @@
+package manticore.business;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import manticore.Observer;
+import manticore.data.JAXBDataController;
+
+/**
+ * Holds a business controller that is constructed the first time that it is used.
+ * The listeners added before the construction are added to the controller once it is constructed.
+ * @param <T> Class of the business controller
+ * @author hector
+ */
+public class LazyBusiness<T extends BusinessController>
+{
+    /**
+     * Class of the business controller
+     */
+    private Class<T> controllerClass;
+    
+    /**
+     * The data controller injected to the business controller
+     */
+    private JAXBDataController data;
+    
+    /**
+     * The business controller, once constructed
+     */
+    private volatile T controller;
+    
+    /**
+     * Listeners waiting for the business controller to be constructed
+     */
+    private List<Observer> listeners;
+    
+    /**
+     * Creates a new LazyBusiness for the given business controller class.
+     * @param controllerClass Class of the business controller
+     * @param data The data controller injected to the business controller
+     */
+    public LazyBusiness(Class<T> controllerClass, JAXBDataController data)
+    {
+        this.controllerClass = controllerClass;
+        this.data = data;
+        listeners = new CopyOnWriteArrayList();
+    }
+    
+    /**
+     * Gets the class of the business controller.
+     * @return Class of the business controller
+     */
+    public Class<T> getControllerClass()
+    {
+        return controllerClass;
+    }
+    
+    /**
+     * Tells whether the business controller has been constructed.
+     * @return True if the business controller has been constructed, false otherwise
+     */
+    public boolean isCreated()
+    {
+        return controller != null;
+    }
+    
+    /**
+     * Gets the business controller, constructing it the first time.
+     * @return The business controller
+     */
+    public T get()
+    {
+        if(controller == null)
+            create();
+        
+        return controller;
+    }
+    
+    /**
+     * Adds a listener to the business controller, or keeps it until the controller is constructed.
+     * @param obs The Observer that wants to listen to the business controller
+     */
+    public synchronized void addListener(Observer obs)
+    {
+        if(controller != null)
+            controller.addListener(obs);
+        else
+            listeners.add(obs);
+    }
+    
+    /**
+     * Constructs the business controller using reflection and adds the waiting listeners to it.
+     */
+    private synchronized void create()
+    {
+        if(controller != null)
+            return;
+        
+        try {
+            T created = controllerClass.getConstructor(JAXBDataController.class).newInstance(data);
+            
+            for(Observer obs : listeners)
+                created.addListener(obs);
+            
+            listeners.clear();
+            controller = created;
+        }
+        catch(Exception e) {
+            throw new BusinessException("Unable to construct business controller " +
+                    controllerClass.getSimpleName(), e);
+        }
+    }
+}
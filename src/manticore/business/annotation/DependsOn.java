@@ -0,0 +1,24 @@
+package manticore.business.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+import manticore.business.BusinessController;
+
+/**
+ * Declares the business controllers that must be constructed before the annotated business controller.
+ * It is only needed when the constructor of the controller relies on data set up by other controllers,
+ * and it is used to construct the independent controllers in parallel on startup.
+ * @author hector
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface DependsOn
+{
+    /**
+     * Gets the business controllers that must be constructed first.
+     * @return The classes of the business controllers that must be constructed first
+     */
+    Class<? extends BusinessController>[] value();
+}
@@ -1,12 +1,17 @@
 package manticore.data;
 
 import java.io.File;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.HashMap;
 import java.util.Map;
 import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBElement;
 import javax.xml.bind.JAXBException;
 import javax.xml.bind.Marshaller;
 import javax.xml.bind.Unmarshaller;
+import javax.xml.namespace.QName;
+import javax.xml.transform.stream.StreamSource;
 
 /**
  * You can use this class to store and get objects in memory. Additionally, 
@@ -64,13 +69,32 @@ public class DataController implements JAXBDataController
     @Override
     public void save(Object o, String path, Class[] boundClasses) throws JAXBException
     {
-        JAXBContext jc = JAXBContext.newInstance(boundClasses);
-        Marshaller m = jc.createMarshaller();
+        Marshaller m = JAXBContextCache.get(boundClasses).createMarshaller();
         m.setProperty("jaxb.formatted.output", true);
         
         m.marshal(o, new File(path));
     }
     
+    /**
+     * Writes the given object as XML to the given stream, even if its class is not a root element. The
+     * objects that are not root elements are wrapped in an element named after their class.
+     * @param o Object to write as XML
+     * @param ostream Stream where to write the generated XML, which is not closed
+     * @throws JAXBException If the object cannot be mapped to XML
+     */
+    @Override
+    public void save(Object o, OutputStream ostream) throws JAXBException
+    {
+        JAXBContext context = JAXBContextCache.get(o.getClass());
+        Marshaller m = context.createMarshaller();
+        m.setProperty(Marshaller.JAXB_FRAGMENT, true);
+        
+        if(! context.createJAXBIntrospector().isElement(o))
+            o = new JAXBElement(new QName(o.getClass().getSimpleName()), o.getClass(), o);
+        
+        m.marshal(o, ostream);
+    }
+    
     /**
      * Load an instance of the given class from the XML found in path
      * @param c Class of the object to load
@@ -97,12 +121,26 @@ public class DataController implements JAXBDataController
     @Override
     public Object load(Class[] boundClasses, String path) throws JAXBException
     {
-        JAXBContext jc = JAXBContext.newInstance(boundClasses);
-        Unmarshaller u = jc.createUnmarshaller();
+        Unmarshaller u = JAXBContextCache.get(boundClasses).createUnmarshaller();
         
         return u.unmarshal(new File(path));
     }
     
+    /**
+     * Reads an instance of the given class from the XML of the given stream, written by save.
+     * @param c Class of the object to read
+     * @param istream Stream with the XML to read
+     * @return The read object
+     * @throws JAXBException If the XML cannot be mapped to the class
+     */
+    @Override
+    public Object load(Class c, InputStream istream) throws JAXBException
+    {
+        Unmarshaller u = JAXBContextCache.get(c).createUnmarshaller();
+        
+        return u.unmarshal(new StreamSource(istream), c).getValue();
+    }
+    
     /**
      * Returns the object previosuly saved with the name given.
      * @param name Name of the object to get
@@ -0,0 +1,189 @@
+package manticore.data;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.Flushable;
+import java.io.IOException;
+import java.util.Set;
+import java.util.TreeSet;
+import javax.xml.bind.JAXBException;
+import manticore.Debug;
+import manticore.Event;
+import manticore.Observer;
+
+/**
+ * Append-only journal that records the events notified by business controllers.
+ * Every record holds the time of the event in microseconds, the class of the event and its payload
+ * serialized as XML by a data controller. The events that the data controller cannot serialize, like the
+ * ones without a no-arg constructor, are not recorded: they are counted and reported when the journal is
+ * closed, so a journal that does not reproduce the whole workload does not go unnoticed.
+ * 
+ * Example:
+ * EventJournal journal = new EventJournal("events.journal", data);
+ * app.setEventJournal(journal);
+ * 
+ * The recorded events can be injected again in a presentation layer using an EventReplayer.
+ * @author hector
+ */
+public class EventJournal implements Observer, Flushable, Closeable
+{
+    /**
+     * The data controller that serializes the events
+     */
+    private JAXBDataController data;
+    
+    /**
+     * The stream of the journal file
+     */
+    private DataOutputStream ostream;
+    
+    /**
+     * Buffer where the payloads are serialized
+     */
+    private ByteArrayOutputStream payload;
+    
+    /**
+     * Wall clock time when the journal was opened, in microseconds
+     */
+    private long startMicros;
+    
+    /**
+     * Monotonic time when the journal was opened, in nanoseconds
+     */
+    private long startNanos;
+    
+    /**
+     * Number of events that could not be recorded
+     */
+    private int unrecorded;
+    
+    /**
+     * Names of the classes of the events that could not be recorded
+     */
+    private Set<String> unrecordedClasses;
+    
+    /**
+     * Opens the journal at the given path, appending records if it already exists. The events are
+     * serialized by a new DataController.
+     * @param path Path of the journal file
+     * @throws IOException If the file cannot be opened
+     */
+    public EventJournal(String path) throws IOException
+    {
+        this(path, new DataController());
+    }
+    
+    /**
+     * Opens the journal at the given path, appending records if it already exists.
+     * @param path Path of the journal file
+     * @param data The data controller that serializes the events
+     * @throws IOException If the file cannot be opened
+     */
+    public EventJournal(String path, JAXBDataController data) throws IOException
+    {
+        this.data = data;
+        unrecordedClasses = new TreeSet();
+        ostream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(path, true)));
+        payload = new ByteArrayOutputStream();
+        startMicros = System.currentTimeMillis() * 1000;
+        startNanos = System.nanoTime();
+    }
+    
+    /**
+     * Records the event in the journal.
+     * @param event The event occurred
+     */
+    @Override
+    public synchronized void notify(Event event)
+    {
+        long micros = startMicros + (System.nanoTime() - startNanos) / 1000;
+        
+        if(! serialize(event))
+            return;
+        
+        try {
+            ostream.writeLong(micros);
+            ostream.writeUTF(event.getClass().getName());
+            ostream.writeInt(payload.size());
+            payload.writeTo(ostream);
+        }
+        catch(IOException e) {
+            unrecorded(event, e);
+        }
+    }
+    
+    /**
+     * Returns the number of events that could not be recorded so far.
+     * @return Number of events not recorded
+     */
+    public synchronized int getUnrecordedCount()
+    {
+        return unrecorded;
+    }
+    
+    /**
+     * Writes the buffered records to the journal file.
+     * @throws IOException If the records cannot be written
+     */
+    @Override
+    public synchronized void flush() throws IOException
+    {
+        ostream.flush();
+    }
+    
+    /**
+     * Writes the buffered records and closes the journal file.
+     * @throws IOException If the journal cannot be closed, or if some events could not be recorded
+     */
+    @Override
+    public synchronized void close() throws IOException
+    {
+        ostream.close();
+        
+        if(unrecorded > 0)
+            throw new IOException(unrecorded + " events could not be recorded in the journal: "
+                    + unrecordedClasses);
+    }
+    
+    /**
+     * Serializes the event into the payload buffer.
+     * @param event The event to serialize
+     * @return True if the event has been serialized, false if it cannot be recorded
+     */
+    private boolean serialize(Event event)
+    {
+        payload.reset();
+        
+        try {
+            data.save(event, payload);
+            
+            return true;
+        }
+        catch(JAXBException e) {
+            unrecorded(event, e);
+            
+            return false;
+        }
+    }
+    
+    /**
+     * Counts an event that could not be recorded, warning about the first one of every class.
+     * @param event The event not recorded
+     * @param cause The reason why it could not be recorded
+     */
+    private void unrecorded(Event event, Exception cause)
+    {
+        ++unrecorded;
+        
+        if(unrecordedClasses.add(event.getClass().getName())) {
+            Debug.println("Unable to record events " + event.getClass().getName() + " in the journal: "
+                    + cause);
+            
+            if(Debug.isEnabled())
+                cause.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package manticore.data;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import javax.xml.bind.JAXBException;
+import manticore.Event;
+import manticore.Observer;
+
+/**
+ * Replays the events recorded by an EventJournal into an observer, like a SwingController, at the
+ * original speed or faster.
+ * 
+ * Example:
+ * EventReplayer replayer = new EventReplayer("events.journal");
+ * 
+ * // Replay ten times faster than recorded
+ * replayer.replay(swingController, 10);
+ * 
+ * @author hector
+ */
+public class EventReplayer
+{
+    /**
+     * Path of the journal file
+     */
+    private String path;
+    
+    /**
+     * The data controller that deserializes the events
+     */
+    private JAXBDataController data;
+    
+    /**
+     * Creates a new replayer for the journal at the given path. The events are deserialized by a new
+     * DataController.
+     * @param path Path of the journal file
+     */
+    public EventReplayer(String path)
+    {
+        this(path, new DataController());
+    }
+    
+    /**
+     * Creates a new replayer for the journal at the given path.
+     * @param path Path of the journal file
+     * @param data The data controller that deserializes the events
+     */
+    public EventReplayer(String path, JAXBDataController data)
+    {
+        this.path = path;
+        this.data = data;
+    }
+    
+    /**
+     * Replays the recorded events into the given observer on the current thread.
+     * A record that cannot be deserialized stops the replay, as skipping it would not reproduce the
+     * recorded workload; the events before it have been replayed already.
+     * @param target The observer that receives the events
+     * @param speed Speed factor: 1 replays at the original speed, 2 twice as fast, and 0 or less replays
+     * without waiting between events
+     * @return The number of events replayed
+     * @throws IOException If the journal cannot be read, or a recorded event cannot be deserialized
+     * @throws InterruptedException If interrupted while waiting between events
+     */
+    public int replay(Observer target, double speed) throws IOException, InterruptedException
+    {
+        DataInputStream istream = new DataInputStream(new BufferedInputStream(new FileInputStream(path)));
+        
+        try {
+            int replayed = 0;
+            long firstMicros = -1;
+            long startNanos = System.nanoTime();
+            
+            while(true) {
+                long micros;
+                
+                try {
+                    micros = istream.readLong();
+                }
+                catch(EOFException e) {
+                    break;
+                }
+                
+                String className = istream.readUTF();
+                byte[] payload = new byte[istream.readInt()];
+                istream.readFully(payload);
+                
+                if(firstMicros < 0)
+                    firstMicros = micros;
+                
+                Event event = deserialize(className, payload);
+                
+                if(speed > 0)
+                    waitUntil(startNanos + (long) ((micros - firstMicros) * 1000 / speed));
+                
+                target.notify(event);
+                ++replayed;
+            }
+            
+            return replayed;
+        }
+        finally {
+            istream.close();
+        }
+    }
+    
+    /**
+     * Waits until the given monotonic time.
+     * @param nanos Monotonic time to wait for, in nanoseconds
+     * @throws InterruptedException If interrupted while waiting
+     */
+    private void waitUntil(long nanos) throws InterruptedException
+    {
+        long remaining = nanos - System.nanoTime();
+        
+        if(remaining > 0)
+            Thread.sleep(remaining / 1000000, (int) (remaining % 1000000));
+    }
+    
+    /**
+     * Deserializes a recorded event.
+     * @param className Name of the class of the event
+     * @param payload The serialized event
+     * @return The event
+     * @throws IOException If the event cannot be deserialized
+     */
+    private Event deserialize(String className, byte[] payload) throws IOException
+    {
+        if(payload.length == 0)
+            throw new IOException("Event " + className + " recorded without payload.");
+        
+        try {
+            return (Event) data.load(Class.forName(className), new ByteArrayInputStream(payload));
+        }
+        catch(ClassNotFoundException e) {
+            throw new IOException("Unknown event class " + className, e);
+        }
+        catch(JAXBException e) {
+            throw new IOException("Unable to deserialize event " + className, e);
+        }
+    }
+}
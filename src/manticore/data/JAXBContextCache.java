@@ -0,0 +1,73 @@
+package manticore.data;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBException;
+
+/**
+ * Simple static class that keeps the JAXB contexts created in the whole process.
+ * JAXB contexts are immutable and thread-safe, but expensive to create and heavy on memory, so all the
+ * applications and data controllers of the process share them instead of creating one per use.
+ * @author hector
+ */
+public class JAXBContextCache
+{
+    /**
+     * JAXB contexts identified by their list of bound classes
+     */
+    private static ConcurrentMap<List<Class>, JAXBContext> contexts = new ConcurrentHashMap();
+    
+    /**
+     * Returns the JAXB context for the given bound class, creating it the first time.
+     * @param boundClass Class that JAXB has to take into account
+     * @return The JAXB context
+     * @throws JAXBException If the class cannot be bound
+     */
+    public static JAXBContext get(Class boundClass) throws JAXBException
+    {
+        return get(new Class[] { boundClass });
+    }
+    
+    /**
+     * Returns the JAXB context for the given bound classes, creating it the first time.
+     * @param boundClasses Classes that JAXB has to take into account
+     * @return The JAXB context
+     * @throws JAXBException If the classes cannot be bound
+     */
+    public static JAXBContext get(Class[] boundClasses) throws JAXBException
+    {
+        List<Class> key = Arrays.asList(boundClasses.clone());
+        JAXBContext context = contexts.get(key);
+        
+        if(context == null) {
+            context = JAXBContext.newInstance(boundClasses);
+            
+            JAXBContext previous = contexts.putIfAbsent(key, context);
+            
+            if(previous != null)
+                context = previous;
+        }
+        
+        return context;
+    }
+    
+    /**
+     * Returns the number of JAXB contexts kept.
+     * @return Number of JAXB contexts kept
+     */
+    public static int size()
+    {
+        return contexts.size();
+    }
+    
+    /**
+     * Forgets all the JAXB contexts kept, so the classes they bind can be unloaded.
+     */
+    public static void clear()
+    {
+        contexts.clear();
+    }
+}
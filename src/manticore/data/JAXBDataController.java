@@ -1,5 +1,7 @@
 package manticore.data;
 
+import java.io.InputStream;
+import java.io.OutputStream;
 import javax.xml.bind.JAXBException;
 
 /**
@@ -47,6 +49,14 @@ public interface JAXBDataController
      */
     public void save(Object o, String path, Class[] boundClasses) throws JAXBException;
     
+    /**
+     * Writes the given object as XML to the given stream, even if its class is not a root element.
+     * @param o Object to write as XML
+     * @param ostream Stream where to write the generated XML, which is not closed
+     * @throws JAXBException If the object cannot be mapped to XML
+     */
+    public void save(Object o, OutputStream ostream) throws JAXBException;
+    
     /**
      * Load an instance of the given class from the XML found in path
      * @param c Class of the object to load
@@ -65,4 +75,13 @@ public interface JAXBDataController
      * @throws JAXBException 
      */
     public Object load(Class[] boundClasses, String path) throws JAXBException;
+    
+    /**
+     * Reads an instance of the given class from the XML of the given stream, written by save.
+     * @param c Class of the object to read
+     * @param istream Stream with the XML to read
+     * @return The read object
+     * @throws JAXBException If the XML cannot be mapped to the class
+     */
+    public Object load(Class c, InputStream istream) throws JAXBException;
 }
@@ -0,0 +1,16 @@
+package manticore.event;
+
+import manticore.Observer;
+
+/**
+ * An Observer that wants to know when a batch of events delivered by a RingBuffer has ended.
+ * It can be used to defer expensive work, like repainting, until the whole batch has been received.
+ * @author hector
+ */
+public interface BatchObserver extends Observer
+{
+    /**
+     * Notifies the observer that the last event of a batch has been delivered.
+     */
+    public void endOfBatch();
+}
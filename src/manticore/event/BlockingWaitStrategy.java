@@ -0,0 +1,40 @@
+package manticore.event;
+
+/**
+ * Wait strategy that parks the consumers on a monitor until an event is published.
+ * It uses the least CPU at the cost of some latency and a lock on every publication.
+ * @author hector
+ */
+public class BlockingWaitStrategy implements WaitStrategy
+{
+    /**
+     * Monitor where the consumers wait
+     */
+    private final Object lock = new Object();
+    
+    /**
+     * Waits on the monitor until the sequence is published.
+     * @param sequence The sequence to wait for
+     * @param ring The ring buffer
+     * @throws InterruptedException If interrupted while waiting
+     */
+    @Override
+    public void waitFor(long sequence, RingBuffer ring) throws InterruptedException
+    {
+        synchronized(lock) {
+            while(! ring.isAvailable(sequence) && ! ring.isHalted())
+                lock.wait();
+        }
+    }
+    
+    /**
+     * Wakes up all the consumers waiting on the monitor.
+     */
+    @Override
+    public void signalAll()
+    {
+        synchronized(lock) {
+            lock.notifyAll();
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package manticore.event;
+
+/**
+ * Wait strategy that busy spins until an event is published.
+ * It gives the lowest latency but keeps one core busy per consumer, so it should only be used when there
+ * are spare cores.
+ * @author hector
+ */
+public class BusySpinWaitStrategy implements WaitStrategy
+{
+    /**
+     * Spins until the sequence is published.
+     * @param sequence The sequence to wait for
+     * @param ring The ring buffer
+     * @throws InterruptedException If interrupted while waiting
+     */
+    @Override
+    public void waitFor(long sequence, RingBuffer ring) throws InterruptedException
+    {
+        while(! ring.isAvailable(sequence) && ! ring.isHalted()) {
+            if(Thread.interrupted())
+                throw new InterruptedException();
+        }
+    }
+    
+    /**
+     * Does nothing, the consumers never sleep.
+     */
+    @Override
+    public void signalAll()
+    {
+        // Consumers are always polling
+    }
+}
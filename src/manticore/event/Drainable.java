@@ -0,0 +1,19 @@
+package manticore.event;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An asynchronous event transport that can deliver its pending events and stop.
+ * @author hector
+ */
+public interface Drainable
+{
+    /**
+     * Stops accepting events and waits until the pending events have been delivered.
+     * @param timeout Maximum time to wait
+     * @param unit Unit of the timeout
+     * @return True if all the pending events have been delivered, false if the timeout elapsed
+     * @throws InterruptedException If interrupted while waiting
+     */
+    public boolean drain(long timeout, TimeUnit unit) throws InterruptedException;
+}
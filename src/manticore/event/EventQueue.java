@@ -0,0 +1,238 @@
+package manticore.event;
+
+import java.util.AbstractMap;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import manticore.Event;
+import manticore.metrics.EventMetrics;
+
+/**
+ * A bounded queue of events that applies an OverflowPolicy when it is full.
+ * It keeps count of the events that have been dropped or coalesced.
+ * @author hector
+ */
+public class EventQueue
+{
+    /**
+     * Maximum number of pending events
+     */
+    private int capacity;
+    
+    /**
+     * Policy applied when the queue is full
+     */
+    private OverflowPolicy policy;
+    
+    /**
+     * The pending events
+     */
+    private Queue<Slot> slots;
+    
+    /**
+     * The pending keyed events, identified by event class and key, when coalescing
+     */
+    private Map<Object, Slot> pendingByKey;
+    
+    /**
+     * Number of events dropped because the queue was full
+     */
+    private long dropped;
+    
+    /**
+     * Number of events that replaced a pending event with the same key
+     */
+    private long coalesced;
+    
+    /**
+     * Tells whether the queue has been closed
+     */
+    private boolean isClosed;
+    
+    /**
+     * Creates a new EventQueue with the given capacity and overflow policy.
+     * @param capacity Maximum number of pending events
+     * @param policy Policy applied when the queue is full
+     */
+    public EventQueue(int capacity, OverflowPolicy policy)
+    {
+        if(capacity < 1)
+            throw new IllegalArgumentException("The capacity of an event queue must be positive.");
+        
+        this.capacity = capacity;
+        this.policy = policy;
+        slots = new ArrayDeque(capacity);
+        pendingByKey = new HashMap();
+        isClosed = false;
+    }
+    
+    /**
+     * Adds an event to the queue applying the overflow policy if the queue is full.
+     * If the publisher is interrupted while waiting with the BLOCK policy, the event is dropped and the
+     * interrupted status of the thread is restored.
+     * @param event The event to add
+     * @return True if the event has been queued or coalesced, false if it has been dropped
+     */
+    public synchronized boolean offer(Event event)
+    {
+        if(isClosed)
+            return false;
+        
+        Object key = null;
+        
+        if(policy == OverflowPolicy.COALESCE && event instanceof KeyedEvent) {
+            key = new AbstractMap.SimpleImmutableEntry(event.getClass(), ((KeyedEvent) event).getKey());
+            Slot pending = pendingByKey.get(key);
+            
+            if(pending != null) {
+                pending.event = event;
+                coalesced++;
+                
+                return true;
+            }
+        }
+        
+        while(slots.size() >= capacity) {
+            switch(policy) {
+                case BLOCK:
+                    try {
+                        wait();
+                    }
+                    catch(InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        dropped++;
+                        
+                        return false;
+                    }
+                    
+                    if(isClosed)
+                        return false;
+                    break;
+                    
+                case DROP_NEWEST:
+                    dropped++;
+                    return false;
+                    
+                default:
+                    forget(slots.poll());
+                    dropped++;
+            }
+        }
+        
+        Slot slot = new Slot(event, key, EventMetrics.getPublishTime());
+        slots.add(slot);
+        
+        if(key != null)
+            pendingByKey.put(key, slot);
+        
+        notifyAll();
+        
+        return true;
+    }
+    
+    /**
+     * Takes the next event from the queue, waiting for one if the queue is empty.
+     * The publication time of the event is restored on the current thread for the EventMetrics.
+     * @return The next event, or null if the queue has been closed and there are no events left
+     * @throws InterruptedException If interrupted while waiting
+     */
+    public synchronized Event take() throws InterruptedException
+    {
+        while(slots.isEmpty()) {
+            if(isClosed)
+                return null;
+            
+            wait();
+        }
+        
+        Slot slot = slots.poll();
+        forget(slot);
+        notifyAll();
+        
+        EventMetrics.setPublishTime(slot.publishTime);
+        
+        return slot.event;
+    }
+    
+    /**
+     * Closes the queue. No more events are accepted, but the pending ones can still be taken.
+     */
+    public synchronized void close()
+    {
+        isClosed = true;
+        notifyAll();
+    }
+    
+    /**
+     * Gets the number of pending events.
+     * @return The number of pending events
+     */
+    public synchronized int size()
+    {
+        return slots.size();
+    }
+    
+    /**
+     * Gets the maximum number of pending events.
+     * @return The capacity of the queue
+     */
+    public int getCapacity()
+    {
+        return capacity;
+    }
+    
+    /**
+     * Gets the policy applied when the queue is full.
+     * @return The overflow policy
+     */
+    public OverflowPolicy getPolicy()
+    {
+        return policy;
+    }
+    
+    /**
+     * Gets the number of events dropped because the queue was full.
+     * @return The number of dropped events
+     */
+    public synchronized long getDroppedCount()
+    {
+        return dropped;
+    }
+    
+    /**
+     * Gets the number of events that replaced a pending event with the same key.
+     * @return The number of coalesced events
+     */
+    public synchronized long getCoalescedCount()
+    {
+        return coalesced;
+    }
+    
+    /**
+     * Forgets the key of a slot that is leaving the queue.
+     * @param slot The slot leaving the queue
+     */
+    private void forget(Slot slot)
+    {
+        if(slot.key != null)
+            pendingByKey.remove(slot.key);
+    }
+    
+    /**
+     * A pending event, its coalescing key and its publication time.
+     */
+    private static class Slot
+    {
+        private Event event;
+        private Object key;
+        private long publishTime;
+        
+        private Slot(Event event, Object key, long publishTime)
+        {
+            this.event = event;
+            this.key = key;
+            this.publishTime = publishTime;
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package manticore.event;
+
+import manticore.Event;
+
+/**
+ * An Event that can be coalesced with other pending events of the same class and key.
+ * For instance, several updates of the same entity can be reduced to the latest one.
+ * @author hector
+ */
+public interface KeyedEvent extends Event
+{
+    /**
+     * Gets the key that identifies what this event is about.
+     * @return The key of the event
+     */
+    public Object getKey();
+}
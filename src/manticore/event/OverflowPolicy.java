@@ -0,0 +1,29 @@
+package manticore.event;
+
+/**
+ * Policies that a bounded EventQueue can apply when an event arrives and the queue is full.
+ * @author hector
+ */
+public enum OverflowPolicy
+{
+    /**
+     * The publisher waits until the subscriber makes room in the queue
+     */
+    BLOCK,
+    
+    /**
+     * The oldest pending event is dropped to make room for the new one
+     */
+    DROP_OLDEST,
+    
+    /**
+     * The new event is dropped
+     */
+    DROP_NEWEST,
+    
+    /**
+     * A pending KeyedEvent of the same class and key is replaced by the new one. If there is none and the
+     * queue is full, the oldest pending event is dropped
+     */
+    COALESCE
+}
@@ -0,0 +1,129 @@
+package manticore.event;
+
+import java.util.concurrent.TimeUnit;
+import manticore.Debug;
+import manticore.Event;
+import manticore.Observer;
+
+/**
+ * Observer that delivers events asynchronously to another observer through a bounded EventQueue.
+ * The events are delivered in order by a dedicated daemon thread, so a slow observer never blocks the
+ * publisher unless the BLOCK overflow policy is used.
+ * @author hector
+ */
+public class QueuedObserver implements Observer, Drainable
+{
+    /**
+     * The observer that receives the events
+     */
+    private Observer observer;
+    
+    /**
+     * The queue of pending events
+     */
+    private EventQueue queue;
+    
+    /**
+     * The thread that delivers the events
+     */
+    private Thread dispatcher;
+    
+    /**
+     * Creates a new QueuedObserver and starts delivering events to the given observer.
+     * @param observer The observer that receives the events
+     * @param capacity Maximum number of pending events
+     * @param policy Policy applied when the queue is full
+     */
+    public QueuedObserver(Observer observer, int capacity, OverflowPolicy policy)
+    {
+        this.observer = observer;
+        queue = new EventQueue(capacity, policy);
+        
+        dispatcher = new Thread("manticore-events-" + observer.getClass().getSimpleName()) {
+            @Override
+            public void run() {
+                dispatch();
+            }
+        };
+        
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+    }
+    
+    /**
+     * Queues an event to be delivered to the observer.
+     * @param event The event occurred
+     */
+    @Override
+    public void notify(Event event)
+    {
+        queue.offer(event);
+    }
+    
+    /**
+     * Gets the observer that receives the events.
+     * @return The observer
+     */
+    public Observer getObserver()
+    {
+        return observer;
+    }
+    
+    /**
+     * Gets the queue of pending events, which keeps the dropped and coalesced counters.
+     * @return The queue of pending events
+     */
+    public EventQueue getQueue()
+    {
+        return queue;
+    }
+    
+    /**
+     * Stops accepting events. The pending events are still delivered before the dispatcher finishes.
+     */
+    public void close()
+    {
+        queue.close();
+    }
+    
+    /**
+     * Stops accepting events and waits until the pending events have been delivered.
+     * @param timeout Maximum time to wait
+     * @param unit Unit of the timeout
+     * @return True if all the pending events have been delivered, false if the timeout elapsed
+     * @throws InterruptedException If interrupted while waiting
+     */
+    @Override
+    public boolean drain(long timeout, TimeUnit unit) throws InterruptedException
+    {
+        close();
+        dispatcher.join(Math.max(1, unit.toMillis(timeout)));
+        
+        return ! dispatcher.isAlive();
+    }
+    
+    /**
+     * Delivers the queued events until the queue is closed and empty.
+     */
+    private void dispatch()
+    {
+        try {
+            Event event = queue.take();
+            
+            while(event != null) {
+                try {
+                    observer.notify(event);
+                }
+                catch(RuntimeException e) {
+                    if(Debug.isEnabled())
+                        e.printStackTrace();
+                }
+                
+                event = queue.take();
+            }
+        }
+        catch(InterruptedException e) {
+            Debug.println("Event dispatcher interrupted: " + dispatcher.getName());
+        }
+    }
+}
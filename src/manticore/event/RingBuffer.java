@@ -0,0 +1,405 @@
+package manticore.event;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import manticore.Debug;
+import manticore.Event;
+import manticore.Observer;
+import manticore.metrics.EventMetrics;
+
+/**
+ * Preallocated ring of event slots that transports events from publishers to consumers.
+ * Publishers claim a sequence, store the event in the slot of that sequence and publish it. Every consumer
+ * runs on its own thread, follows its own sequence and receives all the events available in batches.
+ * Publishers never overwrite a slot that a consumer has not processed yet, so a slow consumer applies
+ * backpressure to the publishers instead of growing memory. The slots are released once every consumer has
+ * processed them, so the ring buffer does not keep delivered events reachable.
+ * 
+ * Once halted, the ring buffer drops the events published instead of overwriting slots that could be
+ * unprocessed, and counts them.
+ * 
+ * A RingBuffer is an Observer, so it can be added as a listener of business controllers directly.
+ * @author hector
+ */
+public class RingBuffer implements Observer, Drainable
+{
+    /**
+     * The event slots, reused on every lap
+     */
+    private Event[] entries;
+    
+    /**
+     * The publication time of the event of every slot, for the EventMetrics
+     */
+    private long[] publishTimes;
+    
+    /**
+     * The sequence published on every slot
+     */
+    private AtomicLongArray published;
+    
+    /**
+     * Mask used to get the slot of a sequence
+     */
+    private int mask;
+    
+    /**
+     * The last sequence claimed by a publisher
+     */
+    private AtomicLong claimed;
+    
+    /**
+     * The last sequence whose slot has been released, so publishers can reuse it
+     */
+    private AtomicLong released;
+    
+    /**
+     * Number of events dropped because the ring buffer was halted
+     */
+    private AtomicLong dropped;
+    
+    /**
+     * Strategy used by the consumers to wait for new events
+     */
+    private WaitStrategy waitStrategy;
+    
+    /**
+     * The consumers of the ring buffer
+     */
+    private List<Consumer> consumers;
+    
+    /**
+     * Tells whether the ring buffer has been halted
+     */
+    private volatile boolean isHalted;
+    
+    /**
+     * Creates a new RingBuffer with the given size and a BlockingWaitStrategy.
+     * @param size Number of slots, it must be a power of two
+     */
+    public RingBuffer(int size)
+    {
+        this(size, new BlockingWaitStrategy());
+    }
+    
+    /**
+     * Creates a new RingBuffer with the given size and wait strategy.
+     * @param size Number of slots, it must be a power of two
+     * @param waitStrategy Strategy used by the consumers to wait for new events
+     */
+    public RingBuffer(int size, WaitStrategy waitStrategy)
+    {
+        if(size < 1 || Integer.bitCount(size) != 1)
+            throw new IllegalArgumentException("The size of a ring buffer must be a power of two.");
+        
+        entries = new Event[size];
+        publishTimes = new long[size];
+        published = new AtomicLongArray(size);
+        mask = size - 1;
+        claimed = new AtomicLong(-1);
+        released = new AtomicLong(-1);
+        dropped = new AtomicLong();
+        this.waitStrategy = waitStrategy;
+        consumers = new CopyOnWriteArrayList();
+        isHalted = false;
+        
+        for(int i = 0; i < size; ++i)
+            published.set(i, -1);
+    }
+    
+    /**
+     * Publishes the event in the ring buffer.
+     * @param event The event occurred
+     */
+    @Override
+    public void notify(Event event)
+    {
+        publish(event);
+    }
+    
+    /**
+     * Publishes an event in the ring buffer, waiting if the slowest consumer is a whole lap behind.
+     * The event is dropped if the ring buffer is halted before or while waiting.
+     * @param event The event to publish
+     * @return True if the event has been published, false if it has been dropped
+     */
+    public boolean publish(Event event)
+    {
+        if(isHalted)
+            return drop();
+        
+        long sequence = claimed.incrementAndGet();
+        long wrapPoint = sequence - entries.length;
+        
+        while(! isSlotFree(wrapPoint)) {
+            if(isHalted)
+                return drop();
+            
+            LockSupport.parkNanos(1L);
+        }
+        
+        int index = (int) sequence & mask;
+        entries[index] = event;
+        publishTimes[index] = EventMetrics.getPublishTime();
+        published.set(index, sequence);
+        
+        waitStrategy.signalAll();
+        
+        return true;
+    }
+    
+    /**
+     * Tells whether the slot of the given sequence, a lap before the one being published, can be reused.
+     * @param wrapPoint The sequence a lap before the one being published
+     * @return True if every consumer has processed the sequence or there are no consumers, false otherwise
+     */
+    private boolean isSlotFree(long wrapPoint)
+    {
+        return wrapPoint <= released.get() || consumers.isEmpty();
+    }
+    
+    /**
+     * Counts an event dropped because the ring buffer is halted.
+     * @return False, as the event has not been published
+     */
+    private boolean drop()
+    {
+        dropped.incrementAndGet();
+        Debug.println("Event dropped, the ring buffer has been halted.");
+        
+        return false;
+    }
+    
+    /**
+     * Releases the slots that every consumer has processed, so the events are not kept reachable and
+     * publishers can reuse the slots.
+     */
+    private void releaseSlots()
+    {
+        synchronized(released) {
+            long minimum = getMinimumSequence();
+            
+            if(minimum == Long.MAX_VALUE)
+                return;
+            
+            // Slots published while there were no consumers can be far behind, but only the last lap is held
+            long first = Math.max(released.get() + 1, minimum - entries.length + 1);
+            
+            for(long s = first; s <= minimum; ++s)
+                entries[(int) s & mask] = null;
+            
+            if(minimum > released.get())
+                released.set(minimum);
+        }
+    }
+    
+    /**
+     * Adds a consumer that receives, on its own daemon thread, every event published from now on.
+     * If the observer is a BatchObserver, it is notified at the end of every batch.
+     * @param observer The observer that consumes the events
+     */
+    public void addConsumer(Observer observer)
+    {
+        Consumer consumer = new Consumer(observer, claimed.get());
+        consumers.add(consumer);
+        
+        // The slots published while there were no consumers are not processed by this consumer
+        releaseSlots();
+        
+        Thread thread = new Thread(consumer, "manticore-ring-" + observer.getClass().getSimpleName());
+        thread.setDaemon(true);
+        thread.start();
+    }
+    
+    /**
+     * Tells whether the given sequence has been published.
+     * @param sequence The sequence
+     * @return True if the sequence has been published, false otherwise
+     */
+    public boolean isAvailable(long sequence)
+    {
+        return published.get((int) sequence & mask) == sequence;
+    }
+    
+    /**
+     * Tells whether the ring buffer has been halted.
+     * @return True if the ring buffer has been halted, false otherwise
+     */
+    public boolean isHalted()
+    {
+        return isHalted;
+    }
+    
+    /**
+     * Halts the ring buffer. The consumers deliver the events already published and then finish.
+     */
+    public void halt()
+    {
+        isHalted = true;
+        waitStrategy.signalAll();
+    }
+    
+    /**
+     * Waits until the consumers have received the events published so far and halts the ring buffer.
+     * @param timeout Maximum time to wait
+     * @param unit Unit of the timeout
+     * @return True if all the published events have been delivered, false if the timeout elapsed
+     * @throws InterruptedException If interrupted while waiting
+     */
+    @Override
+    public boolean drain(long timeout, TimeUnit unit) throws InterruptedException
+    {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        long last = claimed.get();
+        boolean isDrained = getMinimumSequence() >= last;
+        
+        while(! isDrained && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+            isDrained = getMinimumSequence() >= last;
+        }
+        
+        halt();
+        
+        return isDrained;
+    }
+    
+    /**
+     * Gets the number of events dropped because the ring buffer was halted.
+     * @return The number of dropped events
+     */
+    public long getDroppedCount()
+    {
+        return dropped.get();
+    }
+    
+    /**
+     * Gets the number of slots of the ring buffer.
+     * @return The number of slots
+     */
+    public int getSize()
+    {
+        return entries.length;
+    }
+    
+    /**
+     * Gets the sequence of the slowest consumer.
+     * @return The sequence of the slowest consumer, or Long.MAX_VALUE if there are no consumers
+     */
+    private long getMinimumSequence()
+    {
+        long minimum = Long.MAX_VALUE;
+        
+        for(Consumer consumer : consumers)
+            minimum = Math.min(minimum, consumer.sequence.get());
+        
+        return minimum;
+    }
+    
+    /**
+     * A consumer of the ring buffer that delivers the events to an observer.
+     */
+    private class Consumer implements Runnable
+    {
+        /**
+         * The observer that receives the events
+         */
+        private Observer observer;
+        
+        /**
+         * The last sequence delivered
+         */
+        private AtomicLong sequence;
+        
+        /**
+         * Creates a new consumer that starts after the given sequence.
+         * @param observer The observer that receives the events
+         * @param sequence The last sequence that the consumer should skip
+         */
+        private Consumer(Observer observer, long sequence)
+        {
+            this.observer = observer;
+            this.sequence = new AtomicLong(sequence);
+        }
+        
+        /**
+         * Delivers batches of available events until the ring buffer is halted.
+         */
+        @Override
+        public void run()
+        {
+            long next = sequence.get() + 1;
+            
+            try {
+                while(true) {
+                    if(! isAvailable(next)) {
+                        if(isHalted)
+                            break;
+                        
+                        waitStrategy.waitFor(next, RingBuffer.this);
+                        continue;
+                    }
+                    
+                    long last = next;
+                    
+                    while(last - next < mask && isAvailable(last + 1))
+                        ++last;
+                    
+                    for(long s = next; s <= last; ++s)
+                        deliver((int) s & mask);
+                    
+                    endOfBatch();
+                    
+                    sequence.set(last);
+                    releaseSlots();
+                    next = last + 1;
+                }
+            }
+            catch(InterruptedException e) {
+                Debug.println("Ring buffer consumer interrupted: " + Thread.currentThread().getName());
+            }
+            finally {
+                // A dead consumer must not hold the slots it has not processed
+                consumers.remove(this);
+                releaseSlots();
+            }
+        }
+        
+        /**
+         * Notifies the observer of the end of a batch, if it is a BatchObserver.
+         */
+        private void endOfBatch()
+        {
+            if(! (observer instanceof BatchObserver))
+                return;
+            
+            try {
+                ((BatchObserver) observer).endOfBatch();
+            }
+            catch(RuntimeException e) {
+                if(Debug.isEnabled())
+                    e.printStackTrace();
+            }
+        }
+        
+        /**
+         * Delivers the event of a slot to the observer.
+         * @param index The slot of the event to deliver
+         */
+        private void deliver(int index)
+        {
+            EventMetrics.setPublishTime(publishTimes[index]);
+            
+            try {
+                observer.notify(entries[index]);
+            }
+            catch(RuntimeException e) {
+                if(Debug.isEnabled())
+                    e.printStackTrace();
+            }
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package manticore.event;
+
+/**
+ * Strategy used by the consumers of a RingBuffer to wait for new events.
+ * @author hector
+ */
+public interface WaitStrategy
+{
+    /**
+     * Waits until the given sequence has been published in the ring buffer or the ring buffer is halted.
+     * @param sequence The sequence to wait for
+     * @param ring The ring buffer
+     * @throws InterruptedException If interrupted while waiting
+     */
+    public void waitFor(long sequence, RingBuffer ring) throws InterruptedException;
+    
+    /**
+     * Wakes up the consumers that are waiting for new events.
+     */
+    public void signalAll();
+}
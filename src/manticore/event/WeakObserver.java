@@ -0,0 +1,59 @@
+package manticore.event;
+
+import java.lang.ref.WeakReference;
+import manticore.Event;
+import manticore.Observer;
+
+/**
+ * Observer that holds its delegate through a weak reference.
+ * Once the delegate has been garbage collected, notifications are ignored and the observable is expected
+ * to purge this instance from its listeners.
+ * @author hector
+ */
+public class WeakObserver implements Observer
+{
+    /**
+     * Weak reference to the real observer
+     */
+    private WeakReference<Observer> observer;
+    
+    /**
+     * Creates a new WeakObserver for the given observer.
+     * @param observer The observer to hold weakly
+     */
+    public WeakObserver(Observer observer)
+    {
+        this.observer = new WeakReference(observer);
+    }
+    
+    /**
+     * Returns the observer held by this instance.
+     * @return The observer, or null if it has been collected
+     */
+    public Observer get()
+    {
+        return observer.get();
+    }
+    
+    /**
+     * Tells whether the held observer has been garbage collected.
+     * @return True if the observer has been collected, false otherwise
+     */
+    public boolean isCollected()
+    {
+        return observer.get() == null;
+    }
+    
+    /**
+     * Notifies the held observer, if it is still alive.
+     * @param event The event occurred
+     */
+    @Override
+    public void notify(Event event)
+    {
+        Observer o = observer.get();
+        
+        if(o != null)
+            o.notify(event);
+    }
+}
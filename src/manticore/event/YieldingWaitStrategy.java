@@ -0,0 +1,45 @@
+package manticore.event;
+
+/**
+ * Wait strategy that spins for a while and then yields the processor until an event is published.
+ * It gives low latency without fully burning a core when the ring buffer is idle.
+ * @author hector
+ */
+public class YieldingWaitStrategy implements WaitStrategy
+{
+    /**
+     * Number of busy spins before starting to yield
+     */
+    private static final int SPIN_TRIES = 100;
+    
+    /**
+     * Spins and then yields until the sequence is published.
+     * @param sequence The sequence to wait for
+     * @param ring The ring buffer
+     * @throws InterruptedException If interrupted while waiting
+     */
+    @Override
+    public void waitFor(long sequence, RingBuffer ring) throws InterruptedException
+    {
+        int tries = SPIN_TRIES;
+        
+        while(! ring.isAvailable(sequence) && ! ring.isHalted()) {
+            if(Thread.interrupted())
+                throw new InterruptedException();
+            
+            if(tries > 0)
+                --tries;
+            else
+                Thread.yield();
+        }
+    }
+    
+    /**
+     * Does nothing, the consumers never sleep.
+     */
+    @Override
+    public void signalAll()
+    {
+        // Consumers are always polling
+    }
+}
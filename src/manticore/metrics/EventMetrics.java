@@ -0,0 +1,209 @@
+package manticore.metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import manticore.Event;
+
+/**
+ * Simple static class that measures the path of the events from business controllers to view listeners.
+ * Measuring is disabled by default and costs almost nothing while disabled.
+ * 
+ * The time of publication of an event is kept per thread, so the asynchronous transports carry it along
+ * with the event and restore it on the thread that delivers the event.
+ * @author hector
+ */
+public class EventMetrics
+{
+    /**
+     * Tells whether the metrics are enabled or not.
+     */
+    private static volatile boolean enabled = false;
+    
+    /**
+     * Statistics identified by event class
+     */
+    private static ConcurrentMap<Class, EventStats> stats = new ConcurrentHashMap();
+    
+    /**
+     * Time of publication of the event being notified on the current thread
+     */
+    private static ThreadLocal<Long> publishTime = new ThreadLocal();
+    
+    /**
+     * The last time that a listener waited on the AWT event queue, in nanoseconds
+     */
+    private static volatile long eventQueueLag = 0;
+    
+    /**
+     * Enables the metrics.
+     */
+    public static void enable()
+    {
+        enabled = true;
+    }
+    
+    /**
+     * Disables the metrics.
+     */
+    public static void disable()
+    {
+        enabled = false;
+    }
+    
+    /**
+     * Tells whether the metrics are enabled or not.
+     * @return True if the metrics are enabled, false otherwise
+     */
+    public static boolean isEnabled()
+    {
+        return enabled;
+    }
+    
+    /**
+     * Removes all the statistics gathered.
+     */
+    public static void reset()
+    {
+        stats.clear();
+        eventQueueLag = 0;
+    }
+    
+    /**
+     * Gets the statistics gathered for every class of events.
+     * @return The statistics of every class of events
+     */
+    public static List<EventStats> getStats()
+    {
+        return new ArrayList(stats.values());
+    }
+    
+    /**
+     * Gets the statistics of a class of events.
+     * @param eventClass Class of the events
+     * @return The statistics of the class of events
+     */
+    public static EventStats getStats(Class eventClass)
+    {
+        EventStats eventStats = stats.get(eventClass);
+        
+        if(eventStats == null) {
+            stats.putIfAbsent(eventClass, new EventStats(eventClass));
+            eventStats = stats.get(eventClass);
+        }
+        
+        return eventStats;
+    }
+    
+    /**
+     * Gets the last time that a listener waited on the AWT event queue before running.
+     * @return The AWT event queue lag, in nanoseconds
+     */
+    public static long getEventQueueLag()
+    {
+        return eventQueueLag;
+    }
+    
+    /**
+     * Marks the publication of an event on the current thread.
+     * @param event The event being published
+     */
+    public static void published(Event event)
+    {
+        if(! enabled)
+            return;
+        
+        getStats(event.getClass()).countPublished();
+        publishTime.set(System.nanoTime());
+    }
+    
+    /**
+     * Forgets the publication time of the current thread once the event has been notified.
+     */
+    public static void clearPublishTime()
+    {
+        if(enabled)
+            publishTime.remove();
+    }
+    
+    /**
+     * Gets the publication time of the event being notified on the current thread.
+     * @return The publication time, or 0 if unknown
+     */
+    public static long getPublishTime()
+    {
+        if(! enabled)
+            return 0;
+        
+        Long time = publishTime.get();
+        
+        return time == null ? 0 : time;
+    }
+    
+    /**
+     * Sets the publication time of the event being delivered on the current thread.
+     * Used by asynchronous transports to carry the publication time across threads.
+     * @param time The publication time, or 0 if unknown
+     */
+    public static void setPublishTime(long time)
+    {
+        if(! enabled)
+            return;
+        
+        if(time == 0)
+            publishTime.remove();
+        else
+            publishTime.set(time);
+    }
+    
+    /**
+     * Marks that a listener of the event has been scheduled on the AWT event queue.
+     * @param event The event
+     * @return The time of scheduling, or 0 if the metrics are disabled
+     */
+    public static long scheduled(Event event)
+    {
+        if(! enabled)
+            return 0;
+        
+        long now = System.nanoTime();
+        long published = getPublishTime();
+        
+        if(published != 0)
+            getStats(event.getClass()).getPublishToSchedule().record(now - published);
+        
+        return now;
+    }
+    
+    /**
+     * Marks that a listener of the event has started running on the AWT event queue.
+     * @param event The event
+     * @param scheduled The time of scheduling of the listener
+     * @return The starting time, or 0 if the metrics are disabled
+     */
+    public static long started(Event event, long scheduled)
+    {
+        if(! enabled || scheduled == 0)
+            return 0;
+        
+        long now = System.nanoTime();
+        eventQueueLag = now - scheduled;
+        getStats(event.getClass()).getScheduleToStart().record(eventQueueLag);
+        
+        return now;
+    }
+    
+    /**
+     * Marks that a listener of the event has finished running.
+     * @param event The event
+     * @param started The starting time of the listener
+     */
+    public static void handled(Event event, long started)
+    {
+        if(! enabled || started == 0)
+            return;
+        
+        getStats(event.getClass()).getHandler().record(System.nanoTime() - started);
+    }
+}
@@ -0,0 +1,101 @@
+package manticore.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Dispatch statistics of one class of events.
+ * @author hector
+ */
+public class EventStats
+{
+    /**
+     * Class of the events
+     */
+    private Class eventClass;
+    
+    /**
+     * Number of events published
+     */
+    private AtomicLong published;
+    
+    /**
+     * Time from the publication of an event until a listener is scheduled on the AWT event queue
+     */
+    private Histogram publishToSchedule;
+    
+    /**
+     * Time from the scheduling of a listener until it starts running on the AWT event queue
+     */
+    private Histogram scheduleToStart;
+    
+    /**
+     * Time spent running the listeners
+     */
+    private Histogram handler;
+    
+    /**
+     * Creates empty statistics for the given class of events.
+     * @param eventClass Class of the events
+     */
+    public EventStats(Class eventClass)
+    {
+        this.eventClass = eventClass;
+        published = new AtomicLong();
+        publishToSchedule = new Histogram();
+        scheduleToStart = new Histogram();
+        handler = new Histogram();
+    }
+    
+    /**
+     * Gets the class of the events.
+     * @return The class of the events
+     */
+    public Class getEventClass()
+    {
+        return eventClass;
+    }
+    
+    /**
+     * Gets the number of events published.
+     * @return The number of events published
+     */
+    public long getPublished()
+    {
+        return published.get();
+    }
+    
+    /**
+     * Gets the latencies from the publication of an event until a listener is scheduled, in nanoseconds.
+     * @return The publish-to-schedule histogram
+     */
+    public Histogram getPublishToSchedule()
+    {
+        return publishToSchedule;
+    }
+    
+    /**
+     * Gets the latencies from the scheduling of a listener until it starts running, in nanoseconds.
+     * @return The schedule-to-start histogram
+     */
+    public Histogram getScheduleToStart()
+    {
+        return scheduleToStart;
+    }
+    
+    /**
+     * Gets the running times of the listeners, in nanoseconds.
+     * @return The handler duration histogram
+     */
+    public Histogram getHandler()
+    {
+        return handler;
+    }
+    
+    /**
+     * Counts a published event.
+     */
+    void countPublished()
+    {
+        published.incrementAndGet();
+    }
+}
@@ -0,0 +1,75 @@
+package manticore.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Method;
+
+/**
+ * Simple static class that measures the resources used by the current thread.
+ * The bytes allocated by a thread are only available on the JVMs that support it.
+ * @author hector
+ */
+public class ThreadUsage
+{
+    /**
+     * The thread management interface of the JVM
+     */
+    private static ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    
+    /**
+     * Method that returns the bytes allocated by a thread, or null if the JVM does not support it
+     */
+    private static Method allocatedBytes = findAllocatedBytes();
+    
+    /**
+     * Returns the CPU time used by the current thread.
+     * @return CPU time in nanoseconds, or -1 if the JVM does not support it
+     */
+    public static long getCpuTime()
+    {
+        if(! threads.isCurrentThreadCpuTimeSupported() || ! threads.isThreadCpuTimeEnabled())
+            return -1;
+        
+        return threads.getCurrentThreadCpuTime();
+    }
+    
+    /**
+     * Returns the bytes allocated in the heap by the current thread.
+     * @return Allocated bytes, or -1 if the JVM does not support it
+     */
+    public static long getAllocatedBytes()
+    {
+        if(allocatedBytes == null)
+            return -1;
+        
+        try {
+            return (Long) allocatedBytes.invoke(threads, Thread.currentThread().getId());
+        }
+        catch(Exception e) {
+            return -1;
+        }
+    }
+    
+    /**
+     * Finds the method that returns the bytes allocated by a thread, which is only part of the extended
+     * thread management interface of some JVMs.
+     * @return The method, or null if the JVM does not support it
+     */
+    private static Method findAllocatedBytes()
+    {
+        try {
+            Class extended = Class.forName("com.sun.management.ThreadMXBean");
+            
+            if(! extended.isInstance(threads))
+                return null;
+            
+            Method method = extended.getMethod("getThreadAllocatedBytes", long.class);
+            method.invoke(threads, Thread.currentThread().getId());
+            
+            return method;
+        }
+        catch(Exception e) {
+            return null;
+        }
+    }
+}
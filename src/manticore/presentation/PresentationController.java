@@ -1,7 +1,10 @@
 package manticore.presentation;
 
+import manticore.Application;
 import manticore.Observer;
 import manticore.business.BusinessController;
+import manticore.business.LazyBusiness;
+import manticore.event.RingBuffer;
 
 /**
  * Represents a controller of the application presentation layer.
@@ -9,12 +12,80 @@ import manticore.business.BusinessController;
  */
 abstract public class PresentationController implements Observer
 {
+    /**
+     * The ring buffer used to receive the business events, if any
+     */
+    private RingBuffer transport;
+    
+    /**
+     * The application of this presentation controller, if any
+     */
+    private Application application;
+    
     /**
      * Initializes and runs the presentation controller.
      * @throws Exception 
      */
     abstract public void init();
     
+    /**
+     * Initializes ahead of time what the presentation controller would initialize on the first user
+     * action. Called in background after initialization when the application warm-up is enabled.
+     * Does nothing by default.
+     */
+    public void warmUp()
+    {
+        // Does nothing by default
+    }
+    
+    /**
+     * Stops accepting user input. Called on the first phase of the application shutdown.
+     * Does nothing by default.
+     */
+    public void stopInput()
+    {
+        // Does nothing by default
+    }
+    
+    /**
+     * Closes the views and streams of the presentation controller. Called on the last phase of the
+     * application shutdown. Does nothing by default.
+     */
+    public void dispose()
+    {
+        // Does nothing by default
+    }
+    
+    /**
+     * Sets the application of this presentation controller.
+     * @param application The application
+     */
+    public void setApplication(Application application)
+    {
+        this.application = application;
+    }
+    
+    /**
+     * Gets the application of this presentation controller.
+     * @return The application, or null if the presentation controller has not been added to one
+     */
+    public Application getApplication()
+    {
+        return application;
+    }
+    
+    /**
+     * Sets a ring buffer as the transport of the business events to this presentation controller.
+     * The presentation controller consumes the ring buffer on its own thread, and the ring buffer listens
+     * to the business controllers added from now on instead of this presentation controller.
+     * @param transport The ring buffer that transports the events
+     */
+    public void setEventTransport(RingBuffer transport)
+    {
+        this.transport = transport;
+        transport.addConsumer(this);
+    }
+    
     /**
      * Adds a business controller on top of this presentation controller.
      * @param name Name to identify the business controller
@@ -22,6 +93,27 @@ abstract public class PresentationController implements Observer
      */
     public void addBusinessController(BusinessController controller)
     {
-        controller.addListener(this);
+        controller.addListener(getListener());
+    }
+    
+    /**
+     * Adds a business controller that is constructed the first time that it is used.
+     * By default, the business controller is constructed and added right away. Presentation controllers that
+     * can defer its use override this method.
+     * @param lazy The lazy business controller to add
+     */
+    public void addLazyBusinessController(LazyBusiness lazy)
+    {
+        addBusinessController(lazy.get());
+    }
+    
+    /**
+     * Gets the observer that should listen to the business controllers on behalf of this presentation
+     * controller: the ring buffer transport, if any, or the presentation controller itself.
+     * @return The observer that listens to the business controllers
+     */
+    protected Observer getListener()
+    {
+        return transport == null ? this : transport;
     }
 }
@@ -1,12 +1,16 @@
 package manticore.presentation;
 
 import java.awt.Component;
+import java.awt.Window;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
 import javax.swing.JFrame;
+import javax.swing.SwingUtilities;
 import manticore.Event;
 import manticore.business.BusinessController;
+import manticore.business.LazyBusiness;
 import manticore.presentation.swing.SwingException;
 import manticore.presentation.swing.SwingExceptionHandler;
 
@@ -31,6 +35,11 @@ public class SwingController extends PresentationController
      */
     private Map<Class, BusinessController> businessControllers;
     
+    /**
+     * Business controllers that this presentation controller can access and that are constructed on first use
+     */
+    private Map<Class, LazyBusiness> lazyControllers;
+    
     /**
      * Constructs a SwingController given the main view that should be loaded on initialization.
      * @param mainView Class of the main view that should be loaded on initialization
@@ -42,6 +51,7 @@ public class SwingController extends PresentationController
         this.mainView = mainView;
         vloader = new ViewLoader(this);
         businessControllers = new HashMap();
+        lazyControllers = new HashMap();
         
         SwingExceptionHandler.enable();
     }
@@ -66,6 +76,25 @@ public class SwingController extends PresentationController
         
     }
     
+    /**
+     * Unloads all the views and disposes the windows among them on the AWT event queue.
+     */
+    @Override
+    public void dispose()
+    {
+        for(final Component view : vloader.unloadAll()) {
+            if(! (view instanceof Window))
+                continue;
+            
+            SwingUtilities.invokeLater(new Runnable() {
+                @Override
+                public void run() {
+                    ((Window) view).dispose();
+                }
+            });
+        }
+    }
+    
     /**
      * Adds a business controller on top of the SwingController.
      * @param controller The business controller
@@ -78,27 +107,66 @@ public class SwingController extends PresentationController
         super.addBusinessController(controller);
     }
     
+    /**
+     * Adds a business controller on top of the SwingController that is constructed when a view gets it for the
+     * first time. The SwingController listens to it from the beginning.
+     * @param lazy The lazy business controller
+     */
+    @Override
+    public void addLazyBusinessController(LazyBusiness lazy)
+    {
+        lazyControllers.put(lazy.getControllerClass(), lazy);
+        
+        lazy.addListener(getListener());
+    }
+    
     /**
      * Gets a business controller that has been added previously to this SwingController.
+     * A lazy business controller is constructed the first time it is requested.
      * @param <T> Controller class
      * @param controllerClass The business controller class
      * @return Instance of the controllerClass business controller
      */
     public <T extends BusinessController> T getBusinessController(Class<T> controllerClass)
     {
-        if(! businessControllers.containsKey(controllerClass))
-            throw new SwingException("Business controller not found: " + controllerClass.getName());
+        if(businessControllers.containsKey(controllerClass))
+            return (T) businessControllers.get(controllerClass);
         
-        return (T) businessControllers.get(controllerClass);
+        if(lazyControllers.containsKey(controllerClass))
+            return (T) lazyControllers.get(controllerClass).get();
+        
+        throw new SwingException("Business controller not found: " + controllerClass.getName());
     }
     
     /**
      * Returns a collection of all the business controllers that this presentation controller can access.
+     * Lazy business controllers are not included until they have been constructed.
      * @return Collection of all the business controllers that this presentation controller can access
      */
     public Collection<BusinessController> getBusinessControllers()
     {
-        return businessControllers.values();
+        if(lazyControllers.isEmpty())
+            return businessControllers.values();
+        
+        Collection<BusinessController> controllers = new ArrayList(businessControllers.values());
+        
+        for(LazyBusiness lazy : lazyControllers.values()) {
+            if(lazy.isCreated())
+                controllers.add(lazy.get());
+        }
+        
+        return controllers;
+    }
+    
+    /**
+     * Sets whether the views loaded from now on are held weakly.
+     * When enabled, closing and disposing a window is enough to let the view be garbage collected, even
+     * if it has not been closed through this controller.
+     * @param holdViewsWeakly True to hold views weakly, false to keep them until closed
+     */
+    public void setHoldViewsWeakly(boolean holdViewsWeakly)
+    {
+        vloader.setHoldViewsWeakly(holdViewsWeakly);
     }
     
     /**
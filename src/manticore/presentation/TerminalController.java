@@ -1,26 +1,57 @@
 package manticore.presentation;
 
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
 import javax.xml.bind.JAXBException;
 import manticore.Debug;
 import manticore.Event;
 import manticore.Utils;
 import manticore.business.BusinessController;
 import manticore.business.BusinessException;
+import manticore.business.LazyBusiness;
+import manticore.metrics.EventMetrics;
+import manticore.metrics.EventStats;
+import manticore.metrics.Histogram;
+import manticore.metrics.ThreadUsage;
 import manticore.presentation.terminal.AdvancedCommandGroup;
+import manticore.presentation.terminal.CommandAction;
 import manticore.presentation.terminal.CommandGroup;
+import manticore.presentation.terminal.CommandHistory;
+import manticore.presentation.terminal.CommandLine;
+import manticore.presentation.terminal.CommandRegistry;
+import manticore.presentation.terminal.Completer;
+import manticore.presentation.terminal.CompletionIndex;
 import manticore.presentation.terminal.IOStream;
+import manticore.presentation.terminal.LineTokenizer;
+import manticore.presentation.terminal.IndexedSubject;
+import manticore.presentation.terminal.Job;
+import manticore.presentation.terminal.JobManager;
 import manticore.presentation.terminal.annotation.CommandSubject;
 
 /**
  * Represents a terminal command line tool presentation controller.
  * @author hector
  */
-public class TerminalController extends PresentationController
+public class TerminalController extends PresentationController implements Completer
 {
     /**
      * The padding for the commands name when showing the help
@@ -32,6 +63,52 @@ public class TerminalController extends PresentationController
      */
     private static final String COMMENT_MARK = "#";
     
+    /**
+     * The command dispatched on warm-up to every command group, which only prints to a discarded stream
+     */
+    private static final String WARM_UP_COMMAND = "help";
+    
+    /**
+     * Prefix of the command lines that must finish in a given number of seconds
+     */
+    private static final String TIMEOUT_PREFIX = "timeout ";
+    
+    /**
+     * Prefix of the command lines whose time and allocations must be reported
+     */
+    private static final String TIME_PREFIX = "time ";
+    
+    /**
+     * Every line that starts with this string is replaced by a line of the history
+     */
+    private static final String HISTORY_MARK = "!";
+    
+    /**
+     * Number of lines of the history shown by default
+     */
+    private static final int HISTORY_LINES = 20;
+    
+    /**
+     * Every line that ends with this string shows its completions instead of being executed
+     */
+    private static final String COMPLETION_MARK = "\t";
+    
+    /**
+     * The prefix of the options
+     */
+    private static final String OPTION_PREFIX = "--";
+    
+    /**
+     * Milliseconds between the checks of a command waiting for a job or for a busy subject
+     */
+    private static final long JOB_CHECK_INTERVAL = 100;
+    
+    /**
+     * The commands handled by the terminal itself instead of a command group
+     */
+    private static final String[] BUILT_IN_COMMANDS = {"help", "quit", "jobs", "wait", "kill", "timeout",
+            "time", "stats", "history", "metrics"};
+    
     /**
      * The package where the commands are located
      */
@@ -43,15 +120,33 @@ public class TerminalController extends PresentationController
     private IOStream iostream;
     
     /**
-     * Map of command groups identified by subject name
+     * Map of command groups identified by subject name, which can be read while commands run in background
      */
     private Map<String, CommandGroup> commandGroups;
     
     /**
-     * Map of available shortcuts for the commands subjects
+     * Locks that keep the commands on the same subject from running at the same time, by subject name,
+     * which can be shared with other terminals
+     */
+    private ConcurrentMap<String, SubjectLock> subjectLocks;
+    
+    /**
+     * Map of available shortcuts for the commands subjects, which can be read while commands run in background
      */
     private Map<String, String> shortcuts;
     
+    /**
+     * Map of the business controllers that are constructed on first use, identified by subject name, which
+     * can be changed while commands run in background
+     */
+    private Map<String, LazyBusiness> lazySubjects;
+    
+    /**
+     * Map of the descriptions of the subjects whose business controllers have not been constructed yet, which
+     * can be changed while commands run in background
+     */
+    private Map<String, String> lazyDescriptions;
+    
     /**
      * The welcoming message that the terminal shows on initialization
      */
@@ -62,6 +157,56 @@ public class TerminalController extends PresentationController
      */
     private boolean isInitialized;
     
+    /**
+     * Tells whether the terminal has stopped accepting input
+     */
+    private volatile boolean isStopped;
+    
+    /**
+     * Tells whether quitting the terminal exits the whole application
+     */
+    private boolean isExitOnQuit;
+    
+    /**
+     * Tells whether the terminal listens to the business controllers that are added to it
+     */
+    private boolean isListening;
+    
+    /**
+     * The manager of the command lines run in background or with a timeout
+     */
+    private JobManager jobs;
+    
+    /**
+     * The command index generated at compile time for the commands package, if any
+     */
+    private volatile CommandRegistry registry;
+    
+    /**
+     * Tells whether the command index has been looked up or not
+     */
+    private volatile boolean isRegistryLoaded;
+    
+    /**
+     * The history of the command lines typed in the terminal, or null if they are not kept
+     */
+    private CommandHistory history;
+    
+    /**
+     * The indexes used to complete the command lines, or null if they have not been built yet
+     */
+    private volatile Completions completions;
+    
+    /**
+     * Version of the subjects known, increased every time a subject is added
+     */
+    private AtomicInteger subjectsVersion;
+    
+    /**
+     * Tells whether the completion indexes are being rebuilt in the background or not
+     */
+    private AtomicBoolean isBuildingCompletions;
+    
     /**
      * Constructs a new TerminalController with the default System input/output.
      * @param commandsPackage The package where the commands are located
@@ -72,9 +217,18 @@ public class TerminalController extends PresentationController
     {
         this.commandsPackage = commandsPackage;
         iostream = new IOStream(istream, ostream);
-        commandGroups = new TreeMap();
-        shortcuts = new HashMap();
+        commandGroups = new ConcurrentSkipListMap();
+        shortcuts = new ConcurrentHashMap();
+        lazySubjects = new ConcurrentHashMap();
+        lazyDescriptions = new ConcurrentHashMap();
         isInitialized = false;
+        isStopped = false;
+        isExitOnQuit = true;
+        isListening = true;
+        subjectLocks = new ConcurrentHashMap();
+        jobs = new JobManager();
+        subjectsVersion = new AtomicInteger();
+        isBuildingCompletions = new AtomicBoolean();
     }
     
     /**
@@ -86,6 +240,34 @@ public class TerminalController extends PresentationController
         this.welcomeMsg = welcomeMsg;
     }
     
+    /**
+     * Sets the history where the command lines typed in the terminal are kept. The command lines run in
+     * batch are not kept.
+     * @param history The command history, or null to not keep the command lines
+     */
+    public void setHistory(CommandHistory history)
+    {
+        this.history = history;
+    }
+    
+    /**
+     * Gets the history where the command lines typed in the terminal are kept.
+     * @return The command history, or null if the command lines are not kept
+     */
+    public CommandHistory getHistory()
+    {
+        return history;
+    }
+    
+    /**
+     * Sets the number of lines of every page of the output paged by the commands.
+     * @param pageSize Number of lines of a page, or 0 to not page the output
+     */
+    public void setPageSize(int pageSize)
+    {
+        iostream.setPageSize(pageSize);
+    }
+    
     /**
      * Initializes and runs the terminal in a new thread.
      */
@@ -100,28 +282,217 @@ public class TerminalController extends PresentationController
         new Thread() {
             @Override
             public void run() {
-                iostream.println(welcomeMsg);
+                runLoop();
+            }
+        }.start();
+    }
+    
+    /**
+     * Runs the read-execute loop of the terminal on the current thread until the input ends or it is stopped.
+     */
+    void runLoop()
+    {
+        isInitialized = true;
+        iostream.println(welcomeMsg);
 
-                String line = iostream.readLine();
+        String line = iostream.readLine();
 
-                while(line != null)
-                {
-                    line = line.trim();
+        while(line != null && ! isStopped)
+        {
+            if(line.endsWith(COMPLETION_MARK)) {
+                showCompletions(line.substring(0, line.length() - COMPLETION_MARK.length()));
+                line = "";
+            }
+            
+            line = line.trim();
+            
+            if(line.startsWith(HISTORY_MARK))
+                line = expandHistory(line);
 
-                    if (! shouldLineBeIgnored(line)) {
-                        // Set subcommand prompt
-                        iostream.setPrompt(">>");
-                        exec(line);
-                    }
+            if (! shouldLineBeIgnored(line)) {
+                if(history != null)
+                    history.add(line);
+                
+                // Set subcommand prompt
+                iostream.setPrompt(">>");
+                exec(line);
+            }
 
-                    // Set command prompt
-                    iostream.setPrompt(">");
-                    line = iostream.readLine();
+            // Set command prompt
+            iostream.setPrompt(">");
+            
+            if(! isStopped)
+                line = iostream.readLine();
+        }
+        
+        iostream.flush();
+        isInitialized = false;
+    }
+    
+    /**
+     * Replaces a line that starts with the history mark by the line of the history it refers to, and prints it.
+     * '!!' refers to the last line, '!n' to the line with number n, '!?text' to the last line that contains
+     * the text, and '!text' to the last line that starts with the text.
+     * @param line The line that starts with the history mark
+     * @return The line of the history, or an empty line if there is no such line
+     */
+    private String expandHistory(String line)
+    {
+        String query = line.substring(HISTORY_MARK.length());
+        int index = -1;
+        
+        if(history != null) {
+            if(query.equals(HISTORY_MARK))
+                index = history.size() - 1;
+            else if(query.matches("[0-9]{1,9}"))
+                index = Integer.parseInt(query) - 1;
+            else if(query.startsWith("?"))
+                index = history.findPrevious(query.substring(1), history.size(), false);
+            else
+                index = history.findPrevious(query, history.size(), true);
+        }
+        
+        if(index < 0 || index >= history.size()) {
+            iostream.println("[Terminal error] " + line + ": not found in the history.");
+            return "";
+        }
+        
+        String expanded = history.get(index);
+        iostream.println(expanded);
+        
+        return expanded;
+    }
+    
+    /**
+     * Dispatches the help command of every command group through the same path as the commands typed, on
+     * a captured channel whose output is discarded. This initializes the subject lookup and locking, the
+     * option parsing and the indexed or reflective invokers of the real command groups before the first
+     * command. The business controllers of lazy subjects are not constructed, and the help actions get one
+     * latency sample each. The completion indexes are built too, so the first completion does not build them.
+     */
+    @Override
+    public void warmUp()
+    {
+        buildCompletions();
+        
+        for(String subjectName : new ArrayList<String>(commandGroups.keySet())) {
+            iostream.openChannel(null, true);
+            
+            try {
+                if(! execCommand(WARM_UP_COMMAND + " " + subjectName))
+                    Debug.println("Terminal warm-up failed on subject " + subjectName);
+            }
+            finally {
+                iostream.closeChannel();
+            }
+        }
+    }
+    
+    /**
+     * Executes the script at the given path in batch mode.
+     * @param path Path of the script
+     * @return The number of commands that failed
+     * @throws IOException If the script cannot be read
+     */
+    public int runBatch(String path) throws IOException
+    {
+        InputStream script = new FileInputStream(path);
+        
+        try {
+            return runBatch(script);
+        }
+        finally {
+            script.close();
+        }
+    }
+    
+    /**
+     * Executes the command lines of a script on the current thread in batch mode: prompts and questions are
+     * not printed, the questions are answered with the arguments left in the command line or with default
+     * values, and the output is buffered. A quit command ends the script without exiting the application.
+     * A summary of the execution is printed at the end.
+     * @param script The stream of the script, for example System.in
+     * @return The number of commands that failed
+     * @throws IOException If the script cannot be read
+     */
+    public int runBatch(InputStream script) throws IOException
+    {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(script));
+        boolean wasInteractive = iostream.isInteractive();
+        int succeeded = 0, failed = 0;
+        long start = System.nanoTime();
+        
+        iostream.setInteractive(false);
+        
+        try {
+            String line = reader.readLine();
+            
+            while(line != null && ! isStopped) {
+                line = line.trim();
+                
+                if(line.equals("quit"))
+                    break;
+                
+                if(! shouldLineBeIgnored(line)) {
+                    if(exec(line))
+                        succeeded++;
+                    else
+                        failed++;
                 }
                 
-                isInitialized = false;
+                line = reader.readLine();
             }
-        }.start();
+            
+            iostream.println("Batch finished: " + succeeded + " commands succeeded, " + failed + " failed in "
+                    + Utils.timeString(System.nanoTime() - start));
+        }
+        finally {
+            iostream.flush();
+            iostream.setInteractive(wasInteractive);
+        }
+        
+        return failed;
+    }
+    
+    /**
+     * Sets whether quitting the terminal shuts down and exits the whole application, or only stops the input
+     * of this terminal.
+     * @param isExitOnQuit True to exit the application on quit, false to stop only this terminal
+     */
+    public void setExitOnQuit(boolean isExitOnQuit)
+    {
+        this.isExitOnQuit = isExitOnQuit;
+    }
+    
+    /**
+     * Sets whether the terminal listens to the business controllers added from now on. Sessions of a
+     * terminal server do not listen to the shared business controllers, so they do not pile up as listeners.
+     * @param isListening True to listen to the business controllers, false otherwise
+     */
+    void setListening(boolean isListening)
+    {
+        this.isListening = isListening;
+    }
+    
+    /**
+     * Sets the locks of the subjects, so the commands on a subject never run at the same time as the
+     * commands on the same subject of the other terminals that share them. Sessions of a terminal server share
+     * the locks, as they share the business controllers.
+     * @param subjectLocks The locks of the subjects, by subject name
+     */
+    void setSubjectLocks(ConcurrentMap<String, SubjectLock> subjectLocks)
+    {
+        this.subjectLocks = subjectLocks;
+    }
+    
+    /**
+     * Stops accepting input. The command being executed, if any, finishes normally.
+     */
+    @Override
+    public void stopInput()
+    {
+        isStopped = true;
+        jobs.cancelAll();
     }
     
     /**
@@ -156,6 +527,9 @@ public class TerminalController extends PresentationController
      * BusinessController: PostController
      * CommandGroup: PostCommands
      * 
+     * If the commands package has been indexed at compile time by the CommandIndexProcessor, the command
+     * groups are created from the generated index instead of using reflection.
+     * 
      * @param controller Business controller to add
      */
     @Override
@@ -164,28 +538,30 @@ public class TerminalController extends PresentationController
         try
         {
             String name = controller.getClass().getSimpleName().replace("Controller", "");
-            Class comGroupClass = Class.forName(commandsPackage + "." + name +
-                    "Commands");
+            IndexedSubject subject = getIndexedSubject(name);
             
-            if(!comGroupClass.isAnnotationPresent(CommandSubject.class))
-                throw new Exception("There is no CommandSubject annotation in the " + name + " command "
-                        + "group.");
+            AdvancedCommandGroup commandGroup;
+            String[] subjectInfo = describeSubject(name);
+            String commandGroupName = subjectInfo[0], description = subjectInfo[1];
             
-            CommandSubject commandSubject = (CommandSubject)comGroupClass.getAnnotation(CommandSubject.class);
-            String commandGroupName = commandSubject.name();
+            if(subject != null)
+                commandGroup = subject.create(controller);
+            else
+                commandGroup = (AdvancedCommandGroup) Class.forName(commandsPackage + "." + name + "Commands")
+                        .getConstructor(controller.getClass()).newInstance(controller);
             
             if(! name.equals(commandGroupName))
                 shortcuts.put(name, commandGroupName);
             
-            AdvancedCommandGroup commandGroup = (AdvancedCommandGroup) comGroupClass.getConstructor(
-                controller.getClass()).newInstance(controller);
-            
             commandGroup.setName(commandGroupName);
-            commandGroup.setDescription(commandSubject.description());
+            commandGroup.setDescription(description);
             commandGroup.setIOStream(iostream);
             
             commandGroups.put(commandGroupName, commandGroup);
-            super.addBusinessController(controller);
+            subjectsVersion.incrementAndGet();
+            
+            if(isListening)
+                super.addBusinessController(controller);
         }
         catch(Exception e)
         {
@@ -195,10 +571,547 @@ public class TerminalController extends PresentationController
     }
     
     /**
-     * Executes a command line.
+     * Adds a business controller whose commands are listed right away, but that is not constructed until one
+     * of its commands is executed for the first time.
+     * @param lazy The lazy business controller to add
+     */
+    @Override
+    public void addLazyBusinessController(LazyBusiness lazy)
+    {
+        try
+        {
+            String name = lazy.getControllerClass().getSimpleName().replace("Controller", "");
+            String[] subjectInfo = describeSubject(name);
+            
+            if(! name.equals(subjectInfo[0]))
+                shortcuts.put(name, subjectInfo[0]);
+            
+            lazySubjects.put(subjectInfo[0], lazy);
+            lazyDescriptions.put(subjectInfo[0], subjectInfo[1]);
+            subjectsVersion.incrementAndGet();
+        }
+        catch(Exception e)
+        {
+            if(Debug.isEnabled())
+                e.printStackTrace();
+        }
+    }
+    
+    /**
+     * Returns the name and the description of the command subject of a business controller, without
+     * constructing neither the business controller nor its command group.
+     * @param name Name of the business controller without the Controller suffix
+     * @return An array with the subject name and the subject description
+     * @throws Exception If the command group does not exist or it is not annotated
+     */
+    private String[] describeSubject(String name) throws Exception
+    {
+        IndexedSubject subject = getIndexedSubject(name);
+        
+        if(subject != null)
+            return new String[] { subject.getName(), subject.getDescription() };
+        
+        Class comGroupClass = Class.forName(commandsPackage + "." + name + "Commands");
+        
+        if(!comGroupClass.isAnnotationPresent(CommandSubject.class))
+            throw new Exception("There is no CommandSubject annotation in the " + name + " command group.");
+        
+        CommandSubject commandSubject = (CommandSubject)comGroupClass.getAnnotation(CommandSubject.class);
+        
+        return new String[] { commandSubject.name(), commandSubject.description() };
+    }
+    
+    /**
+     * Constructs the business controller of a lazy subject and adds its command group, if it has not been
+     * done yet.
+     * @param subjectName Name of the subject
+     */
+    private synchronized void createLazySubject(String subjectName)
+    {
+        LazyBusiness lazy = lazySubjects.get(subjectName);
+        
+        if(lazy == null)
+            return;
+        
+        addBusinessController(lazy.get());
+        
+        lazySubjects.remove(subjectName);
+        lazyDescriptions.remove(subjectName);
+    }
+    
+    /**
+     * Returns the words that can complete the last word of a command line: the names of the commands for the
+     * first word, the names and shortcuts of the subjects for the second one, and the options of the command
+     * for the words that start with the option prefix.
+     * @param line The command line typed so far
+     * @return The words that start with the last word of the line, in alphabetical order
+     */
+    @Override
+    public List<String> complete(String line)
+    {
+        int start = Math.max(line.lastIndexOf(CommandLine.SEQUENCE), Math.max(
+                line.lastIndexOf(CommandLine.BACKGROUND), line.lastIndexOf(CommandLine.PIPE))) + 1;
+        String command = line.substring(start);
+        
+        LineTokenizer tokenizer = new LineTokenizer();
+        tokenizer.reset(command);
+        List<String> words = new ArrayList();
+        
+        while(tokenizer.hasNext())
+            words.add(tokenizer.next());
+        
+        if(words.isEmpty() || Character.isWhitespace(command.charAt(command.length() - 1)))
+            words.add("");
+        
+        if(words.size() > 1 && words.get(0).equals(TIME_PREFIX.trim()))
+            words.remove(0);
+        
+        String word = words.get(words.size() - 1);
+        
+        // The indexes are read once, as a subject can be added by another thread while completing. Stale
+        // indexes are still used and rebuilt in the background, since this can be called on the EDT
+        Completions current = completions;
+        
+        if(current == null)
+            current = buildCompletions();
+        else if(current.version != subjectsVersion.get())
+            rebuildCompletions();
+        
+        if(words.size() == 1)
+            return current.commands.complete(word);
+        
+        if(words.size() == 2)
+            return current.subjects.complete(word);
+        
+        List<String> options = new ArrayList();
+        String subjectName = getSubject(words.get(1));
+        CommandGroup commandGroup = commandGroups.get(subjectName);
+        Collection<CommandAction> actions = commandGroup == null ? current.lazyCommands.get(subjectName)
+                : commandGroup.getCommandActions();
+        
+        if(actions == null || ! word.startsWith(OPTION_PREFIX))
+            return options;
+        
+        for(CommandAction action : actions) {
+            if(! action.getName().equals(words.get(0)))
+                continue;
+            
+            for(String option : action.getOptions()) {
+                if((OPTION_PREFIX + option).startsWith(word))
+                    options.add(OPTION_PREFIX + option);
+            }
+        }
+        
+        Collections.sort(options);
+        
+        return options;
+    }
+    
+    /**
+     * Rebuilds the completion indexes in a background thread, unless they are being rebuilt already.
+     */
+    private void rebuildCompletions()
+    {
+        if(! isBuildingCompletions.compareAndSet(false, true))
+            return;
+        
+        Thread builder = new Thread("manticore-completions") {
+            @Override
+            public void run() {
+                try {
+                    buildCompletions();
+                }
+                finally {
+                    isBuildingCompletions.set(false);
+                }
+            }
+        };
+        
+        builder.setDaemon(true);
+        builder.start();
+    }
+    
+    /**
+     * Builds the indexes of the names of the commands and the subjects known so far. The command actions of
+     * the lazy subjects are described from their command group class, without constructing them. It does
+     * not lock the terminal, so it never waits for a business controller being constructed; it only reads
+     * the concurrent maps of subjects, and a subject added meanwhile makes the next completion rebuild them.
+     * @return The indexes built
+     */
+    private Completions buildCompletions()
+    {
+        int version = subjectsVersion.get();
+        CompletionIndex commands = new CompletionIndex();
+        CompletionIndex subjects = new CompletionIndex();
+        
+        for(String command : BUILT_IN_COMMANDS)
+            commands.add(command);
+        
+        for(CommandGroup commandGroup : commandGroups.values()) {
+            subjects.add(commandGroup.getName());
+            
+            for(CommandAction command : commandGroup.getCommandActions())
+                commands.add(command.getName());
+        }
+        
+        Map<String, List<CommandAction>> described = new HashMap();
+        
+        for(Map.Entry<String, LazyBusiness> lazy : lazySubjects.entrySet()) {
+            subjects.add(lazy.getKey());
+            
+            try {
+                String name = lazy.getValue().getControllerClass().getSimpleName().replace("Controller", "");
+                IndexedSubject subject = getIndexedSubject(name);
+                
+                if(subject != null)
+                    described.put(lazy.getKey(), subject.describeCommands());
+                else
+                    described.put(lazy.getKey(), CommandGroup.describeCommands(
+                            Class.forName(commandsPackage + "." + name + "Commands")));
+            }
+            catch(ClassNotFoundException e) {
+                if(Debug.isEnabled())
+                    e.printStackTrace();
+                
+                continue;
+            }
+            
+            for(CommandAction command : described.get(lazy.getKey()))
+                commands.add(command.getName());
+        }
+        
+        for(String shortcut : shortcuts.keySet())
+            subjects.add(shortcut);
+        
+        completions = new Completions(version, commands, subjects, described);
+        
+        return completions;
+    }
+    
+    /**
+     * Shows the words that can complete the last word of a command line in the print stream used to create
+     * this terminal.
+     * @param line The command line typed so far
+     */
+    public void showCompletions(String line)
+    {
+        List<String> completions = complete(line);
+        
+        if(completions.isEmpty()) {
+            iostream.println("No completions.");
+            return;
+        }
+        
+        StringBuilder shown = new StringBuilder();
+        
+        for(String completion : completions)
+            shown.append(completion).append("  ");
+        
+        iostream.println(shown.toString().trim());
+    }
+    
+    /**
+     * Returns the command index generated at compile time for the commands package, looking it up the
+     * first time. It can be called from any thread without locking: concurrent first calls may look it up
+     * twice, but the flag is only set once the index has been assigned, so it is never seen loaded but null.
+     * @return The command index, or null if the commands package has not been indexed
+     */
+    private CommandRegistry getRegistry()
+    {
+        if(! isRegistryLoaded) {
+            try {
+                registry = (CommandRegistry) Class.forName(commandsPackage + "." + CommandRegistry.INDEX_CLASS)
+                        .newInstance();
+            }
+            catch(Exception e) {
+                Debug.println("No command index found in " + commandsPackage + ", using reflection.");
+            }
+            
+            isRegistryLoaded = true;
+        }
+        
+        return registry;
+    }
+    
+    /**
+     * Returns the indexed command subject of a business controller.
+     * The CommandIndexProcessor only indexes the command groups compiled in the same round, so after an
+     * incremental compilation the index may miss command groups of the package. Those are reported and
+     * fall back to reflection.
+     * @param name Name of the business controller without the Controller suffix
+     * @return The indexed command subject, or null if it is not in the command index or there is no index
+     */
+    private IndexedSubject getIndexedSubject(String name)
+    {
+        CommandRegistry index = getRegistry();
+        
+        if(index == null)
+            return null;
+        
+        IndexedSubject subject = index.getSubject(name + "Commands");
+        
+        if(subject == null)
+            Debug.println("The command index of " + commandsPackage + " has no " + name + "Commands, it " +
+                    "may be stale after an incremental compilation. Using reflection.");
+        
+        return subject;
+    }
+    
+    /**
+     * Executes a command line, which can be made of several pipelines of commands.
      * @param line The command line.
+     * @return True if all the commands run in foreground have been executed successfully, false otherwise
+     * @see CommandLine
+     */
+    private boolean exec(String line)
+    {
+        if(line.startsWith(TIME_PREFIX))
+            return execTimed(line.substring(TIME_PREFIX.length()).trim());
+        
+        if(line.startsWith(TIMEOUT_PREFIX))
+            return execWithTimeout(line);
+        
+        if(! CommandLine.hasOperators(line))
+            return execCommand(line);
+        
+        boolean isSuccessful = true;
+        
+        for(CommandLine pipeline : CommandLine.parse(line)) {
+            // A cancelled job does not run the rest of its sequence
+            if(Job.isCurrentCancelled())
+                return false;
+            
+            if(pipeline.isBackground())
+                execInBackground(pipeline);
+            else
+                isSuccessful &= execPipeline(pipeline);
+        }
+        
+        return isSuccessful;
+    }
+    
+    /**
+     * Executes a command line and reports the wall time, the CPU time and the bytes allocated.
+     * The CPU time and the allocations are measured on the current thread only, so they do not include the
+     * commands run in background or the ones run with a timeout.
+     * @param line The command line
+     * @return True if the command line has been executed successfully, false otherwise
+     */
+    private boolean execTimed(String line)
+    {
+        long cpuStart = ThreadUsage.getCpuTime();
+        long allocatedStart = ThreadUsage.getAllocatedBytes();
+        long start = System.nanoTime();
+        
+        boolean isSuccessful = exec(line);
+        
+        long real = System.nanoTime() - start;
+        long cpu = ThreadUsage.getCpuTime() - cpuStart;
+        long allocated = ThreadUsage.getAllocatedBytes() - allocatedStart;
+        
+        iostream.println("real " + Utils.timeString(real)
+                + ", cpu " + (cpuStart < 0 ? "unavailable" : Utils.timeString(cpu))
+                + ", allocated " + (allocatedStart < 0 ? "unavailable" : allocated + " bytes"));
+        
+        return isSuccessful;
+    }
+    
+    /**
+     * Executes a pipeline of commands on the current thread. The output of every command, but the last one,
+     * is captured and used as the input of the next command. The pipeline stops as soon as the job that runs
+     * it is cancelled.
+     * @param pipeline The pipeline of commands
+     * @return True if all the commands have been executed successfully, false otherwise
+     */
+    private boolean execPipeline(CommandLine pipeline)
+    {
+        List<String> commands = pipeline.getCommands();
+        
+        if(commands.size() == 1)
+            return execCommand(commands.get(0));
+        
+        boolean isSuccessful = true;
+        String input = null;
+        
+        for(int i = 0; i < commands.size(); i++) {
+            if(Job.isCurrentCancelled())
+                return false;
+            
+            iostream.openChannel(input, i < commands.size() - 1);
+            
+            try {
+                isSuccessful &= execCommand(commands.get(i));
+            }
+            finally {
+                input = iostream.closeChannel();
+            }
+        }
+        
+        return isSuccessful;
+    }
+    
+    /**
+     * Executes a pipeline of commands as a background job. The commands run without asking questions and
+     * their output is printed in the terminal when flushed.
+     * @param pipeline The pipeline of commands
+     */
+    private void execInBackground(final CommandLine pipeline)
+    {
+        Job job = jobs.submit(Utils.join(pipeline.getCommands(), " | "), new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                iostream.openChannel(null, false);
+                
+                try {
+                    boolean isSuccessful = execPipeline(pipeline);
+                    Job current = Job.getCurrent();
+                    
+                    iostream.println("[" + current.getId() + "] " + (current.isCancelled() ? "Cancelled" :
+                            isSuccessful ? "Done" : "Failed") + "  " + current.getCommand());
+                    
+                    // Once reported, the job is not kept for the jobs and wait commands
+                    jobs.remove(current);
+                    
+                    return isSuccessful;
+                }
+                finally {
+                    iostream.closeChannel();
+                    iostream.flush();
+                }
+            }
+        });
+        
+        iostream.println("[" + job.getId() + "] Started in background");
+    }
+    
+    /**
+     * Executes a command line that must finish in a given number of seconds, with the form
+     * timeout [seconds] [command line]. The command line runs as a job without asking questions, and it is
+     * cancelled if it does not finish in time.
+     * A cancelled command that does not check whether it has been cancelled keeps running in its job, and
+     * its subject stays locked until it returns. Meanwhile, the other commands on that subject fail instead
+     * of waiting for it.
+     * @param line The command line with the timeout prefix
+     * @return True if the command line has finished in time successfully, false otherwise
+     */
+    private boolean execWithTimeout(String line)
+    {
+        String[] parts = line.split("\\s+", 3);
+        int seconds;
+        
+        try {
+            seconds = Integer.parseInt(parts[1]);
+        }
+        catch(RuntimeException e) {
+            seconds = -1;
+        }
+        
+        if(seconds < 0 || parts.length < 3) {
+            iostream.println("[Terminal error] Usage: timeout [seconds] [command]");
+            return false;
+        }
+        
+        final String command = parts[2];
+        
+        Job job = jobs.submit(command, new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                iostream.openChannel(null, false);
+                
+                try {
+                    return exec(command);
+                }
+                finally {
+                    iostream.closeChannel();
+                }
+            }
+        });
+        
+        try {
+            if(! job.waitFor(seconds, TimeUnit.SECONDS)) {
+                job.cancel();
+                iostream.println("[Terminal error] Command cancelled after " + seconds + " seconds.");
+            }
+        }
+        catch(InterruptedException e) {
+            job.cancel();
+            Thread.currentThread().interrupt();
+        }
+        finally {
+            jobs.remove(job);
+        }
+        
+        return job.isDone() && ! job.isCancelled() && job.isSuccessful();
+    }
+    
+    /**
+     * Shows the jobs that are running or have finished without being reported yet, and forgets the finished
+     * ones.
+     */
+    public void showJobs()
+    {
+        for(Job job : jobs.getJobs())
+            iostream.println("[" + job.getId() + "] " + Utils.padRight(job.getState(), 12) +
+                    Utils.padRight(Utils.timeString(job.getElapsedTime()), 16) + job.getCommand());
+        
+        jobs.removeFinished();
+    }
+    
+    /**
+     * Waits for a job to finish, or for all the jobs if no job is given. The background jobs report
+     * themselves how they finished. The wait ends early if the terminal is stopped, so it can be ended from
+     * another thread, and the jobs that are still running are shown.
+     * @param id Identifier of the job, or 0 to wait for all the jobs
+     * @param seconds Maximum number of seconds to wait, or 0 to wait until the jobs finish
+     * @throws InterruptedException If interrupted while waiting
+     */
+    public void waitJobs(int id, int seconds) throws InterruptedException
+    {
+        List<Job> waited = new ArrayList();
+        
+        if(id == 0)
+            waited.addAll(jobs.getJobs());
+        else if(jobs.getJob(id) != null)
+            waited.add(jobs.getJob(id));
+        else
+            throw new BusinessException("There is no running job " + id);
+        
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        
+        for(Job job : waited) {
+            while(! job.waitFor(JOB_CHECK_INTERVAL, TimeUnit.MILLISECONDS)) {
+                if(isStopped || (seconds > 0 && System.nanoTime() - deadline >= 0))
+                    break;
+            }
+            
+            if(job.isDone())
+                jobs.remove(job);
+            else
+                iostream.println("[" + job.getId() + "] Still running  " + job.getCommand());
+        }
+    }
+    
+    /**
+     * Cancels a job. The job stops as soon as its command checks whether it has been cancelled.
+     * @param id Identifier of the job
+     */
+    public void killJob(int id)
+    {
+        Job job = jobs.getJob(id);
+        
+        if(job == null)
+            throw new BusinessException("There is no job " + id);
+        
+        job.cancel();
+    }
+    
+    /**
+     * Executes a single command. Commands on the same subject never run at the same time, while commands
+     * on different subjects can run concurrently.
+     * @param line The command
+     * @return True if the command has been executed successfully, false otherwise
      */
-    private void exec(String line)
+    private boolean execCommand(String line)
     {
         iostream.putIntoInputBuffer(line);
         
@@ -207,12 +1120,60 @@ public class TerminalController extends PresentationController
         
         if(commandName.equals("quit")) {
             quit();
-            return;
+            return true;
         }
         
         if(commandName.equals("help") && !iostream.hasNext()) {
             showHelp();
-            return;
+            return true;
+        }
+        
+        if(commandName.equals("metrics")) {
+            showMetrics();
+            return true;
+        }
+        
+        if(commandName.equals("stats")) {
+            showStats();
+            return true;
+        }
+        
+        if(commandName.equals("history")) {
+            if(iostream.hasNextInt())
+                showHistory(null, iostream.readInt());
+            else
+                showHistory(iostream.hasNext() ? iostream.readString() : null, HISTORY_LINES);
+            
+            return true;
+        }
+        
+        try {
+            if(commandName.equals("jobs")) {
+                showJobs();
+                return true;
+            }
+            
+            if(commandName.equals("wait")) {
+                int id = iostream.hasNextInt() ? iostream.readInt() : 0;
+                waitJobs(id, iostream.hasNextInt() ? iostream.readInt() : 0);
+                return true;
+            }
+            
+            if(commandName.equals("kill")) {
+                if(! iostream.hasNextInt())
+                    throw new BusinessException("Usage: kill [job]");
+                
+                killJob(iostream.readInt());
+                return true;
+            }
+        }
+        catch(BusinessException e) {
+            iostream.println("[Business error] " + e.getMessage());
+            return false;
+        }
+        catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
         }
         
         String shortcut = iostream.readString();
@@ -222,10 +1183,25 @@ public class TerminalController extends PresentationController
         
         try
         {         
+            createLazySubject(subjectName);
+            
             if(! commandGroups.containsKey(subjectName))
                 throw new BusinessException("There is no subject known as " + subjectName);
             
-            commandGroups.get(subjectName).exec(commandName);
+            CommandGroup commandGroup = commandGroups.get(subjectName);
+            SubjectLock lock = lockSubject(subjectName);
+            
+            if(lock == null)
+                return false;
+            
+            try {
+                commandGroup.exec(commandName);
+            }
+            finally {
+                lock.unlock();
+            }
+            
+            return true;
         }
         catch(BusinessException e) {
             iostream.println("[Business error] " + e.getMessage());
@@ -239,10 +1215,53 @@ public class TerminalController extends PresentationController
         catch(NoSuchMethodException e) {
             iostream.println("[Terminal error] Command not found.");
         }
+        catch(InterruptedException e) {
+            // The job has been cancelled while waiting for the subject
+            Thread.currentThread().interrupt();
+        }
         catch(Throwable e) {
             if(Debug.isEnabled())
                 e.printStackTrace();
         }
+        
+        return false;
+    }
+    
+    /**
+     * Locks a subject, so no other command runs on it at the same time. It waits while the subject is busy,
+     * unless the command holding it has been cancelled and has not returned yet, or the current job is
+     * cancelled.
+     * @param subjectName Name of the subject
+     * @return The lock of the subject, held by the current thread, or null if the subject has not been locked
+     * @throws InterruptedException If interrupted while waiting
+     */
+    private SubjectLock lockSubject(String subjectName) throws InterruptedException
+    {
+        SubjectLock lock = subjectLocks.get(subjectName);
+        
+        if(lock == null) {
+            subjectLocks.putIfAbsent(subjectName, new SubjectLock());
+            lock = subjectLocks.get(subjectName);
+        }
+        
+        while(! lock.tryLock(JOB_CHECK_INTERVAL, TimeUnit.MILLISECONDS)) {
+            Job holder = lock.holder;
+            
+            if(holder != null && holder.isCancelled()) {
+                iostream.println("[Terminal error] " + subjectName + " is busy with the cancelled job: " +
+                        holder.getCommand());
+                return null;
+            }
+            
+            if(Job.isCurrentCancelled())
+                return null;
+        }
+        
+        // A nested command on the same subject keeps the job that locked it first
+        if(lock.getHoldCount() == 1)
+            lock.holder = Job.getCurrent();
+        
+        return lock;
     }
     
     /**
@@ -252,23 +1271,142 @@ public class TerminalController extends PresentationController
     {
         iostream.println("Available commands:");
         
+        Map<String, String> descriptions = new TreeMap(lazyDescriptions);
+        
         for(CommandGroup commandGroup : commandGroups.values())
-            iostream.println("    " + Utils.padRight(commandGroup.getName(), HELP_PADDING) +
-                    commandGroup.getDescription());
+            descriptions.put(commandGroup.getName(), commandGroup.getDescription());
         
+        for(Map.Entry<String, String> description : descriptions.entrySet())
+            iostream.println("    " + Utils.padRight(description.getKey(), HELP_PADDING) +
+                    description.getValue());
+        
+        iostream.println("    " + Utils.padRight("jobs", HELP_PADDING) + "Shows the background jobs");
+        iostream.println("    " + Utils.padRight("wait [job] [s]", HELP_PADDING) + "Waits for a job or all");
+        iostream.println("    " + Utils.padRight("kill [job]", HELP_PADDING) + "Cancels a job");
+        iostream.println("    " + Utils.padRight("timeout [s] [cmd]", HELP_PADDING) +
+                "Cancels a command that takes longer");
+        iostream.println("    " + Utils.padRight("time [cmd]", HELP_PADDING) + "Measures a command");
+        iostream.println("    " + Utils.padRight("stats", HELP_PADDING) + "Shows the command latencies");
+        iostream.println("    " + Utils.padRight("history [n|text]", HELP_PADDING) +
+                "Shows the last lines typed, '!' repeats one");
+        iostream.println("    " + Utils.padRight("metrics", HELP_PADDING) + "Shows the event dispatch metrics");
         iostream.println("    " + Utils.padRight("quit", HELP_PADDING) + "Closes the application");
         iostream.println("Use 'help [command]' to show more information about the command.");
     }
     
+    /**
+     * Shows the most recent lines of the history in the print stream used to create this terminal, numbered
+     * so they can be repeated with the history mark.
+     * @param query Text that the lines shown must contain, or null to show any line
+     * @param lines Maximum number of lines to show
+     */
+    public void showHistory(String query, int lines)
+    {
+        if(history == null) {
+            iostream.println("The history is disabled.");
+            return;
+        }
+        
+        List<Integer> found = new ArrayList();
+        int index = history.size();
+        
+        while(found.size() < lines) {
+            index = query == null ? index - 1 : history.findPrevious(query, index, false);
+            
+            if(index < 0)
+                break;
+            
+            found.add(index);
+        }
+        
+        for(int i = found.size() - 1; i >= 0; i--) {
+            index = found.get(i);
+            iostream.println("    " + Utils.padRight(String.valueOf(index + 1), 8) + history.get(index));
+        }
+    }
+    
+    /**
+     * Shows the event dispatch metrics in the print stream used to create this terminal.
+     */
+    public void showMetrics()
+    {
+        if(! EventMetrics.isEnabled()) {
+            iostream.println("Event metrics are disabled.");
+            return;
+        }
+        
+        iostream.println("Event metrics (event queue lag: " + Utils.timeString(EventMetrics.getEventQueueLag())
+                + "):");
+        
+        for(EventStats stats : EventMetrics.getStats()) {
+            iostream.println("    " + stats.getEventClass().getSimpleName() + ": " + stats.getPublished()
+                    + " published");
+            
+            printHistogram("publish to schedule", stats.getPublishToSchedule());
+            printHistogram("schedule to start", stats.getScheduleToStart());
+            printHistogram("handler", stats.getHandler());
+        }
+    }
+    
+    /**
+     * Shows the latencies of the commands executed in this terminal, by subject, in the print stream used to
+     * create this terminal.
+     */
+    public void showStats()
+    {
+        iostream.println("Command latencies:");
+        
+        for(CommandGroup commandGroup : commandGroups.values()) {
+            boolean isGroupShown = false;
+            
+            for(CommandAction command : commandGroup.getCommandActions()) {
+                if(command.getLatency().getCount() == 0)
+                    continue;
+                
+                if(! isGroupShown) {
+                    iostream.println("    " + commandGroup.getName() + ":");
+                    isGroupShown = true;
+                }
+                
+                printHistogram(command.getName(), command.getLatency());
+            }
+        }
+    }
+    
+    /**
+     * Prints a line with the count and the main percentiles of a latency histogram.
+     * @param name Name of the histogram
+     * @param histogram A histogram of nanoseconds
+     */
+    private void printHistogram(String name, Histogram histogram)
+    {
+        iostream.println("        " + Utils.padRight(name, HELP_PADDING) + histogram.getCount() + " times, p50 "
+                + Utils.timeString(histogram.getPercentile(50)) + ", p99 "
+                + Utils.timeString(histogram.getPercentile(99)) + ", max "
+                + Utils.timeString(histogram.getMax()));
+    }
+    
     /**
      * Asks the user for confirmation, and if the user says 'yes' or 'y' quits the whole application.
+     * The application is shut down gracefully before exiting.
+     * If the terminal does not exit on quit, only the input of this terminal is stopped.
      */
     public void quit()
     {
         boolean isConfirmed = iostream.readBoolean("Are you sure do you really want to quit?");
         
-        if(isConfirmed)
-            System.exit(0);
+        if(! isConfirmed)
+            return;
+        
+        if(! isExitOnQuit) {
+            stopInput();
+            return;
+        }
+        
+        if(getApplication() != null)
+            getApplication().shutdown();
+        
+        System.exit(0);
     }
     
     /**
@@ -279,9 +1417,73 @@ public class TerminalController extends PresentationController
      */
     private String getSubject(String shortcut)
     {
-        if(! shortcuts.containsKey(shortcut))
-            return shortcut;
+        String subject = shortcuts.get(shortcut);
         
-        return shortcuts.get(shortcut);
+        return subject == null ? shortcut : subject;
+    }
+    
+    /**
+     * Lock of a subject that knows the job whose command holds it.
+     */
+    static class SubjectLock extends ReentrantLock
+    {
+        /**
+         * The job whose command holds the lock, or null if it is not held by a job
+         */
+        private volatile Job holder;
+        
+        /**
+         * Releases the lock, forgetting its job when it is no longer held.
+         */
+        @Override
+        public void unlock()
+        {
+            if(getHoldCount() == 1)
+                holder = null;
+            
+            super.unlock();
+        }
+    }
+    
+    /**
+     * Indexes used to complete the command lines, built for a version of the subjects known.
+     */
+    private static class Completions
+    {
+        /**
+         * Version of the subjects known when the indexes were built
+         */
+        private int version;
+        
+        /**
+         * Index of the names of the commands
+         */
+        private CompletionIndex commands;
+        
+        /**
+         * Index of the names and shortcuts of the subjects
+         */
+        private CompletionIndex subjects;
+        
+        /**
+         * Command actions of the lazy subjects, described without constructing them, identified by subject name
+         */
+        private Map<String, List<CommandAction>> lazyCommands;
+        
+        /**
+         * Creates the indexes used to complete the command lines.
+         * @param version Version of the subjects known when the indexes were built
+         * @param commands Index of the names of the commands
+         * @param subjects Index of the names and shortcuts of the subjects
+         * @param lazyCommands Command actions of the lazy subjects, identified by subject name
+         */
+        public Completions(int version, CompletionIndex commands, CompletionIndex subjects,
+                Map<String, List<CommandAction>> lazyCommands)
+        {
+            this.version = version;
+            this.commands = commands;
+            this.subjects = subjects;
+            this.lazyCommands = lazyCommands;
+        }
     }
 }
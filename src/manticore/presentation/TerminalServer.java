@@ -0,0 +1,307 @@
+package manticore.presentation;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import manticore.Debug;
+import manticore.Event;
+import manticore.business.BusinessController;
+import manticore.business.LazyBusiness;
+
+/**
+ * Represents a presentation controller that serves terminal sessions over a loopback socket.
+ * 
+ * SECURITY: the server does not authenticate its clients. Any user or process of the local machine that
+ * can connect to the loopback port gets a session that runs any command on the business controllers.
+ * Only add a terminal server to applications that run on trusted, single-user machines.
+ * 
+ * Every connection gets its own TerminalController, with its own input/output stream and prompt, but all
+ * the sessions share the business controllers added to the server. The sessions also share the locks of
+ * the subjects, so the commands on a subject never run at the same time, whatever session they come from.
+ * The business controllers must still be thread-safe if other presentation controllers use them too.
+ * Quitting a session closes the connection instead of exiting the application.
+ * @author hector
+ */
+public class TerminalServer extends PresentationController
+{
+    /**
+     * The package where the commands are located
+     */
+    private String commandsPackage;
+    
+    /**
+     * The port to listen to, or 0 to use any free port
+     */
+    private int port;
+    
+    /**
+     * The welcoming message that every session shows when opened
+     */
+    private String welcomeMsg;
+    
+    /**
+     * The business controllers shared by all the sessions
+     */
+    private List<BusinessController> business;
+    
+    /**
+     * The lazy business controllers shared by all the sessions
+     */
+    private List<LazyBusiness> lazyBusiness;
+    
+    /**
+     * The socket that accepts the connections
+     */
+    private ServerSocket serverSocket;
+    
+    /**
+     * Executor that runs a session on each thread
+     */
+    private ExecutorService sessions;
+    
+    /**
+     * The sockets of the open sessions
+     */
+    private Set<Socket> sockets;
+    
+    /**
+     * The locks of the subjects shared by all the sessions, by subject name
+     */
+    private ConcurrentMap<String, TerminalController.SubjectLock> subjectLocks;
+    
+    /**
+     * Constructs a new TerminalServer. Its clients are not authenticated, so any local user can open a
+     * session once it is initialized.
+     * @param commandsPackage The package where the commands are located
+     * @param port The loopback port to listen to, or 0 to use any free port
+     */
+    public TerminalServer(String commandsPackage, int port)
+    {
+        this.commandsPackage = commandsPackage;
+        this.port = port;
+        business = new CopyOnWriteArrayList();
+        lazyBusiness = new CopyOnWriteArrayList();
+        sockets = Collections.newSetFromMap(new ConcurrentHashMap<Socket, Boolean>());
+        subjectLocks = new ConcurrentHashMap();
+    }
+    
+    /**
+     * Sets the welcome message that every session must print when opened.
+     * @param welcomeMsg The welcome message
+     */
+    public void setWelcomeMessage(String welcomeMsg)
+    {
+        this.welcomeMsg = welcomeMsg;
+    }
+    
+    /**
+     * Binds the server to the loopback interface and starts accepting sessions in a new thread.
+     */
+    @Override
+    public void init()
+    {
+        if(serverSocket != null)
+            throw new RuntimeException("The terminal server is initialized already.");
+        
+        try {
+            serverSocket = new ServerSocket(port, 0, InetAddress.getByName(null));
+        }
+        catch(IOException e) {
+            throw new RuntimeException("Unable to listen to port " + port + ": " + e.getMessage(), e);
+        }
+        
+        sessions = Executors.newCachedThreadPool(new ThreadFactory() {
+            private AtomicInteger count = new AtomicInteger();
+            
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "manticore-session-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                
+                return thread;
+            }
+        });
+        
+        Thread acceptor = new Thread("manticore-terminal-server") {
+            @Override
+            public void run() {
+                accept();
+            }
+        };
+        
+        acceptor.setDaemon(true);
+        acceptor.start();
+        
+        Debug.println("Terminal server listening on port " + getPort());
+    }
+    
+    /**
+     * Accepts connections until the server socket is closed, opening a session for each one.
+     */
+    private void accept()
+    {
+        while(! serverSocket.isClosed()) {
+            try {
+                final Socket socket = serverSocket.accept();
+                sockets.add(socket);
+                
+                sessions.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        serve(socket);
+                    }
+                });
+            }
+            catch(IOException e) {
+                if(! serverSocket.isClosed())
+                    Debug.println("Error accepting a terminal session: " + e.getMessage());
+            }
+        }
+    }
+    
+    /**
+     * Runs a terminal session on the current thread until the client quits or disconnects.
+     * @param socket The socket of the session
+     */
+    private void serve(Socket socket)
+    {
+        try {
+            TerminalController session = new TerminalController(commandsPackage, socket.getInputStream(),
+                    new PrintStream(socket.getOutputStream(), true));
+            
+            session.setApplication(getApplication());
+            session.setWelcomeMessage(welcomeMsg);
+            session.setExitOnQuit(false);
+            session.setListening(false);
+            session.setSubjectLocks(subjectLocks);
+            
+            for(BusinessController controller : business)
+                session.addBusinessController(controller);
+            
+            for(LazyBusiness lazy : lazyBusiness)
+                session.addLazyBusinessController(lazy);
+            
+            session.runLoop();
+        }
+        catch(IOException e) {
+            if(Debug.isEnabled())
+                e.printStackTrace();
+        }
+        finally {
+            sockets.remove(socket);
+            close(socket);
+        }
+    }
+    
+    /**
+     * Closes a socket, ignoring the errors.
+     * @param socket The socket to close
+     */
+    private void close(Socket socket)
+    {
+        try {
+            socket.close();
+        }
+        catch(IOException e) {
+            Debug.println("Error closing a terminal session: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * Gets the port the server is listening to.
+     * @return The port, or -1 if the server has not been initialized
+     */
+    public int getPort()
+    {
+        return serverSocket == null ? -1 : serverSocket.getLocalPort();
+    }
+    
+    /**
+     * Gets the number of sessions currently open.
+     * @return Number of open sessions
+     */
+    public int getSessionCount()
+    {
+        return sockets.size();
+    }
+    
+    /**
+     * Adds a business controller shared by all the sessions opened from now on.
+     * @param controller The business controller
+     */
+    @Override
+    public void addBusinessController(BusinessController controller)
+    {
+        business.add(controller);
+        
+        super.addBusinessController(controller);
+    }
+    
+    /**
+     * Adds a lazy business controller shared by all the sessions opened from now on.
+     * @param lazy The lazy business controller
+     */
+    @Override
+    public void addLazyBusinessController(LazyBusiness lazy)
+    {
+        lazyBusiness.add(lazy);
+        
+        lazy.addListener(getListener());
+    }
+    
+    /**
+     * Receives events and does nothing.
+     * This method is useful when overriden.
+     * @param event Event occurred
+     */
+    @Override
+    public void notify(Event event)
+    {
+        // Does nothing by default
+    }
+    
+    /**
+     * Stops accepting new sessions. The open sessions keep running until disposed.
+     */
+    @Override
+    public void stopInput()
+    {
+        if(serverSocket == null)
+            return;
+        
+        try {
+            serverSocket.close();
+        }
+        catch(IOException e) {
+            Debug.println("Error closing the terminal server: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * Closes all the open sessions and stops the server.
+     */
+    @Override
+    public void dispose()
+    {
+        stopInput();
+        
+        for(Socket socket : new ArrayList<Socket>(sockets))
+            close(socket);
+        
+        if(sessions != null)
+            sessions.shutdownNow();
+    }
+}
@@ -0,0 +1,102 @@
+package manticore.presentation;
+
+import java.awt.Component;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import manticore.Debug;
+import manticore.Event;
+
+/**
+ * A subscription of a view method to an event.
+ * The view is held through a weak reference, so a subscription never keeps a view alive by itself.
+ * @author hector
+ */
+public class ViewListener
+{
+    /**
+     * Weak reference to the listening view
+     */
+    private WeakReference<Component> view;
+    
+    /**
+     * The method of the view that listens to the event
+     */
+    private Method method;
+    
+    /**
+     * The method of the view that filters the events, if any
+     */
+    private Method filter;
+    
+    /**
+     * Creates a new subscription for the given view and method.
+     * @param view The listening view
+     * @param method The method of the view to call when the event occurs
+     */
+    public ViewListener(Component view, Method method)
+    {
+        this(view, method, null);
+    }
+    
+    /**
+     * Creates a new subscription for the given view and method that only receives the events accepted by
+     * the given filter.
+     * @param view The listening view
+     * @param method The method of the view to call when the event occurs
+     * @param filter The method of the view that filters the events, or null to accept all of them
+     */
+    public ViewListener(Component view, Method method, Method filter)
+    {
+        this.view = new WeakReference(view);
+        this.method = method;
+        this.filter = filter;
+    }
+    
+    /**
+     * Gets the listening view.
+     * @return The listening view, or null if it has been garbage collected
+     */
+    public Component getView()
+    {
+        return view.get();
+    }
+    
+    /**
+     * Gets the method of the view that listens to the event.
+     * @return The listening method
+     */
+    public Method getMethod()
+    {
+        return method;
+    }
+    
+    /**
+     * Tells whether the given view accepts the event according to the filter of this subscription.
+     * @param view The listening view
+     * @param event The event occurred
+     * @return True if the event should be delivered to the view, false otherwise
+     */
+    public boolean accepts(Component view, Event event)
+    {
+        if(filter == null)
+            return true;
+        
+        try {
+            if(filter.getParameterTypes().length == 0)
+                return (Boolean) filter.invoke(view);
+            
+            return (Boolean) filter.invoke(view, event);
+        }
+        catch(IllegalAccessException e) {
+            if(Debug.isEnabled())
+                e.printStackTrace();
+        }
+        catch(InvocationTargetException e) {
+            if(Debug.isEnabled())
+                e.printStackTrace();
+        }
+        
+        return false;
+    }
+}
@@ -1,18 +1,22 @@
 package manticore.presentation;
 
 import java.awt.Component;
+import java.lang.ref.WeakReference;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
-import java.util.AbstractMap;
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Iterator;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import javax.swing.SwingUtilities;
 import manticore.Debug;
 import manticore.Event;
+import manticore.Observer;
+import manticore.metrics.EventMetrics;
 import manticore.presentation.annotation.Listen;
 import manticore.presentation.swing.SwingException;
 
@@ -20,8 +24,13 @@ import manticore.presentation.swing.SwingException;
  * A ViewLoader has the responsibility of loading and managing views on memory.
  * @author hector
  */
-public class ViewLoader
+public class ViewLoader implements Observer
 {
+    /**
+     * Methods annotated with Listen identified by view class, shared by all the instances in the process
+     */
+    private static ConcurrentMap<Class, List<Method>> listenMethods = new ConcurrentHashMap();
+    
     private SwingController presentation;
     /**
      * The views loaded identified by name
@@ -29,9 +38,20 @@ public class ViewLoader
     private Map<Class, Component> views;
     
     /**
-     * Map of events that the loaded views are listening
+     * The views loaded identified by name when views are held weakly
+     */
+    private Map<Class, WeakReference<Component>> weakViews;
+    
+    /**
+     * Tells whether the loaded views are held weakly or not
      */
-    private Map<Class, List< Entry<Component, Method> >> events;
+    private boolean holdViewsWeakly;
+    
+    /**
+     * Map of events that the loaded views are listening.
+     * Listener lists are copy-on-write, so notifying never locks while views are loaded or unloaded.
+     */
+    private ConcurrentMap<Class, List<ViewListener>> events;
     
     /**
      * Constructs a ViewLoader for the given SwingController.
@@ -40,8 +60,21 @@ public class ViewLoader
     public ViewLoader(SwingController presentation)
     {
         this.presentation = presentation;
-        views = new HashMap();
-        events = new HashMap();
+        views = new ConcurrentHashMap();
+        weakViews = new ConcurrentHashMap();
+        events = new ConcurrentHashMap();
+        holdViewsWeakly = false;
+    }
+    
+    /**
+     * Sets whether the views loaded from now on are held weakly.
+     * A weakly held view is kept loaded only while something else references it, for instance a
+     * window that has not been disposed. Once collected, its event subscriptions are purged automatically.
+     * @param holdViewsWeakly True to hold views weakly, false to keep them until unloaded
+     */
+    public void setHoldViewsWeakly(boolean holdViewsWeakly)
+    {
+        this.holdViewsWeakly = holdViewsWeakly;
     }
     
     /**
@@ -51,7 +84,7 @@ public class ViewLoader
      */
     public boolean isLoaded(Class<? extends Component> viewClass)
     {
-        return views.containsKey(viewClass);
+        return getView(viewClass) != null;
     }
     
     /**
@@ -59,13 +92,33 @@ public class ViewLoader
      * @param viewClass The class of the view to load
      */
     public void load(Class<? extends Component> viewClass)
+    {
+        create(viewClass);
+    }
+    
+    /**
+     * Creates and loads a view.
+     * @param viewClass The class of the view to load
+     * @return The view created, which the caller must reference while it needs it if views are held weakly
+     */
+    private Component create(Class<? extends Component> viewClass)
     {
         try {
             Component view = (Component) viewClass.getConstructor(SwingController.class).newInstance(
                     presentation);
-        
-            views.put(viewClass, view);
+            
+            if(holdViewsWeakly) {
+                views.remove(viewClass);
+                weakViews.put(viewClass, new WeakReference(view));
+            }
+            else {
+                weakViews.remove(viewClass);
+                views.put(viewClass, view);
+            }
+            
             configureEvents(viewClass, view);
+            
+            return view;
         }
         catch(Exception e) {
             throw new SwingException("Unable to load view " + viewClass.getSimpleName(), e);
@@ -78,29 +131,53 @@ public class ViewLoader
      */
     public void unload(Class<? extends Component> viewClass)
     {
-       if(! isLoaded(viewClass))
-            return;
+        Component view = getView(viewClass);
         
-        Component view = views.get(viewClass);
+        if(view == null)
+            return;
         
         // Remove assigned events
-        for(Method method : viewClass.getMethods()) {
-            if(method.isAnnotationPresent(Listen.class)) {
-                Class[] listenedEvents = method.getAnnotation(Listen.class).value();
+        for(Method method : getListenMethods(viewClass)) {
+            Class[] listenedEvents = method.getAnnotation(Listen.class).value();
+            
+            for(Class listenedEvent : listenedEvents) {
+                List<ViewListener> listeners = events.get(listenedEvent);
                 
-                for(Class listenedEvent : listenedEvents) {
-                    List< Entry<Component, Method> > entries = events.get(listenedEvent);
-                    
-                    Iterator<Entry<Component, Method>> it = entries.iterator(); 
-                    while(it.hasNext()) {
-                        if(it.next().getKey().equals(view))
-                            it.remove();
-                    }
+                if(listeners == null)
+                    continue;
+                
+                for(ViewListener listener : listeners) {
+                    if(listener.getView() == view)
+                        listeners.remove(listener);
                 }
             }
         }
         
         views.remove(viewClass);
+        weakViews.remove(viewClass);
+    }
+    
+    /**
+     * Unloads all the loaded views.
+     * @return The views that were loaded
+     */
+    public List<Component> unloadAll()
+    {
+        Set<Class> viewClasses = new HashSet(views.keySet());
+        viewClasses.addAll(weakViews.keySet());
+        
+        List<Component> unloaded = new ArrayList();
+        
+        for(Class viewClass : viewClasses) {
+            Component view = getView(viewClass);
+            
+            if(view != null) {
+                unload(viewClass);
+                unloaded.add(view);
+            }
+        }
+        
+        return unloaded;
     }
     
     /**
@@ -110,24 +187,61 @@ public class ViewLoader
      */
     public <T extends Component> T get(Class<T> viewClass) throws SwingException
     {
-        if(! isLoaded(viewClass))
-            load(viewClass);
+        Component view = getView(viewClass);
+        
+        // The view created is returned directly, since a weakly held view could be collected before reading it
+        if(view == null)
+            view = create(viewClass);
+        
+        return (T) view;
+    }
+    
+    /**
+     * Returns the loaded view of the given class, forgetting it if it has been garbage collected.
+     * @param viewClass Class of the view
+     * @return The loaded view, or null if it is not loaded
+     */
+    private Component getView(Class viewClass)
+    {
+        Component view = views.get(viewClass);
+        
+        if(view != null)
+            return view;
+        
+        WeakReference<Component> reference = weakViews.get(viewClass);
+        
+        if(reference == null)
+            return null;
         
-        return (T) views.get(viewClass);
+        view = reference.get();
+        
+        if(view == null)
+            weakViews.remove(viewClass);
+        
+        return view;
     }
     
     /**
      * Notifies an Event to all the loaded views that are listening to it.
+     * The filters of the subscriptions are evaluated on the current thread, so only the accepted events are
+     * scheduled on the AWT event queue. Subscriptions of views that have been garbage collected are purged.
      * @param event The event occurred
      */
+    @Override
     public void notify(Event event) {
-        Class eventClass = event.getClass();
+        List<ViewListener> listeners = events.get(event.getClass());
         
-        if(! events.containsKey(eventClass))
+        if(listeners == null)
             return;
         
-        for(Entry e : events.get(eventClass))
-                invokeEvent(e, event);
+        for(ViewListener listener : listeners) {
+            Component view = listener.getView();
+            
+            if(view == null)
+                listeners.remove(listener);
+            else if(listener.accepts(view, event))
+                invokeEvent(view, listener.getMethod(), event);
+        }
     }
     
             
@@ -138,46 +252,117 @@ public class ViewLoader
      */
     private void configureEvents(Class viewClass, Component view)
     {
+        for(Method m : getListenMethods(viewClass)) {
+            Listen listen = m.getAnnotation(Listen.class);
+            
+            for(Class eventClass : listen.value())
+                addEvent(eventClass, new ViewListener(view, m, getFilter(viewClass, listen.filter(),
+                        eventClass)));
+        }
+    }
+    
+    /**
+     * Returns the methods of a view class annotated with Listen, looking them up only the first time that
+     * the class is loaded in the process.
+     * @param viewClass Class of the view
+     * @return The methods annotated with Listen
+     */
+    private static List<Method> getListenMethods(Class viewClass)
+    {
+        List<Method> methods = listenMethods.get(viewClass);
+        
+        if(methods != null)
+            return methods;
+        
+        methods = new ArrayList();
+        
         for(Method m : viewClass.getMethods()) {
-            if(m.isAnnotationPresent(Listen.class)) {
-                for(Class eventClass : m.getAnnotation(Listen.class).value())
-                    addEvent(eventClass, new AbstractMap.SimpleEntry(view, m));
-            }
+            if(m.isAnnotationPresent(Listen.class))
+                methods.add(m);
+        }
+        
+        List<Method> previous = listenMethods.putIfAbsent(viewClass, methods);
+        
+        return previous == null ? methods : previous;
+    }
+    
+    /**
+     * Forgets the methods annotated with Listen looked up so far, so the view classes can be unloaded.
+     * The views already loaded keep listening to their events.
+     */
+    public static void clearListenMethods()
+    {
+        listenMethods.clear();
+    }
+    
+    /**
+     * Finds the filter method of a view for the given event.
+     * @param viewClass Class of the view
+     * @param name Name of the filter method, empty if there is no filter
+     * @param eventClass Class of the event to filter
+     * @return The filter method, or null if there is no filter
+     */
+    private Method getFilter(Class viewClass, String name, Class eventClass)
+    {
+        if(name.isEmpty())
+            return null;
+        
+        for(Method m : viewClass.getMethods()) {
+            if(! m.getName().equals(name) || m.getReturnType() != boolean.class)
+                continue;
+            
+            Class[] parameters = m.getParameterTypes();
+            
+            if(parameters.length == 0)
+                return m;
+            
+            if(parameters.length == 1 && parameters[0].isAssignableFrom(eventClass))
+                return m;
         }
+        
+        throw new SwingException("Filter " + name + " not found in view " + viewClass.getSimpleName() +
+                " for event " + eventClass.getSimpleName());
     }
         
     /**
      * Adds view listener to the given event.
      * @param eventClass Class of the event
-     * @param entry Entry that contains the view and the method to be called when the event occurs
+     * @param listener Listener that contains the view and the method to be called when the event occurs
      */
-    private void addEvent(Class eventClass, Entry<Component, Method> entry)
+    private void addEvent(Class eventClass, ViewListener listener)
     {
-        if(! events.containsKey(eventClass))
-            events.put(eventClass, new ArrayList());
+        List<ViewListener> listeners = events.get(eventClass);
         
-        events.get(eventClass).add(entry);
+        if(listeners == null) {
+            events.putIfAbsent(eventClass, new CopyOnWriteArrayList());
+            listeners = events.get(eventClass);
+        }
+        
+        listeners.add(listener);
     }
     
     /**
      * Given a view, one of its methods and an event, calls the method passing the event as
      * parameter using the AWT event queue to avoid thread race conditions.
-     * @param entry A view-method pair
+     * @param view The listening view
+     * @param method The method of the view to call
      * @param event The event to notify
      */
-    private void invokeEvent(final Entry<Component, Method> entry, final Event event) { 
+    private void invokeEvent(final Component view, final Method method, final Event event) { 
+        final long scheduled = EventMetrics.scheduled(event);
+        
         Runnable callEvent = new Runnable()
         {
             @Override
             public void run()
             {
-                Method method = entry.getValue();
-
+                long started = EventMetrics.started(event, scheduled);
+                
                 try {
                     if(method.getParameterTypes().length == 0)
-                        method.invoke(entry.getKey());
+                        method.invoke(view);
                     else
-                        method.invoke(entry.getKey(), event);
+                        method.invoke(view, event);
                 }
                 catch(IllegalAccessException e) {
                     if(Debug.isEnabled())
@@ -187,6 +372,9 @@ public class ViewLoader
                     if(Debug.isEnabled())
                         e.printStackTrace();
                 }
+                finally {
+                    EventMetrics.handled(event, started);
+                }
             }
         };
 
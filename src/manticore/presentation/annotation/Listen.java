@@ -15,4 +15,13 @@ import manticore.Event;
 public @interface Listen
 {
     Class<? extends Event>[] value();
+    
+    /**
+     * Gets the name of the view method that filters the events before they are delivered.
+     * The filter method must be public, return a boolean and receive the event or nothing at all. It is
+     * called on the thread that publishes the event, before scheduling the listener on the event queue, so
+     * it must be thread-safe and should only read state that is safe to read outside the AWT event queue.
+     * @return The name of the filter method, or an empty string if every event must be delivered
+     */
+    String filter() default "";
 }
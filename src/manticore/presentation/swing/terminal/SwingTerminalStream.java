@@ -1,9 +1,27 @@
 package manticore.presentation.swing.terminal;
 
 import java.awt.Color;
+import java.awt.Rectangle;
+import java.awt.Toolkit;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.awt.event.InputEvent;
+import java.awt.event.KeyEvent;
 import java.io.InputStream;
 import java.io.PrintStream;
+import java.util.List;
+import javax.swing.AbstractAction;
+import javax.swing.JMenuItem;
+import javax.swing.JPopupMenu;
 import javax.swing.JTextPane;
+import javax.swing.KeyStroke;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+import manticore.Debug;
+import manticore.presentation.terminal.CommandHistory;
+import manticore.presentation.terminal.CommandLine;
+import manticore.presentation.terminal.Completer;
+import manticore.presentation.terminal.CompletionIndex;
 
 /**
  * Creates a two-way communication with a terminal using a Swing JTextPane for user input and output.
@@ -11,8 +29,36 @@ import javax.swing.JTextPane;
  */
 public class SwingTerminalStream
 {
+    /**
+     * Maximum number of completions shown when there are several
+     */
+    private static final int COMPLETIONS_SHOWN = 20;
+    
+    private JTextPane textPane;
     private ConsoleInputStream istream;
     private ConsolePrintStream ostream;
+    private CommandHistory history;
+    private Completer completer;
+    
+    /**
+     * The text searched in the history, as typed before browsing it
+     */
+    private String query;
+    
+    /**
+     * Index of the line of the history shown in the input
+     */
+    private int position;
+    
+    /**
+     * The line of the history shown in the input, or null if none has been shown
+     */
+    private String shown;
+    
+    /**
+     * Tells whether the lines of the history shown start with the query or only contain it
+     */
+    private boolean isPrefixSearch;
     
     /**
      * Creates a new SwingTerminalStream using textPane as component for user input and output with the given
@@ -22,6 +68,7 @@ public class SwingTerminalStream
      */
     public SwingTerminalStream(JTextPane textPane, Color color)
     {
+        this.textPane = textPane;
         istream = new ConsoleInputStream(textPane);
         ostream = new ConsolePrintStream(textPane, Color.white);
     }
@@ -43,4 +90,222 @@ public class SwingTerminalStream
     {
         return ostream;
     }
+    
+    /**
+     * Sets the history that the user can browse while typing. The up and down keys show the previous and
+     * next lines that start with the text typed, and Ctrl+R shows the previous line that contains it.
+     * The same history should be set to the terminal, so the lines typed are added to it.
+     * @param history The command history
+     */
+    public void setHistory(CommandHistory history)
+    {
+        this.history = history;
+        
+        textPane.getInputMap().put(KeyStroke.getKeyStroke(KeyEvent.VK_UP, 0), "history-previous");
+        textPane.getInputMap().put(KeyStroke.getKeyStroke(KeyEvent.VK_DOWN, 0), "history-next");
+        textPane.getInputMap().put(KeyStroke.getKeyStroke(KeyEvent.VK_R, InputEvent.CTRL_DOWN_MASK),
+                "history-search");
+        
+        textPane.getActionMap().put("history-previous", new HistoryAction(true, true));
+        textPane.getActionMap().put("history-next", new HistoryAction(false, true));
+        textPane.getActionMap().put("history-search", new HistoryAction(true, false));
+    }
+    
+    /**
+     * Sets the completer of the words typed. The tab key completes the last word typed as far as all its
+     * completions agree, and shows them when they do not.
+     * @param completer The completer, usually the terminal that reads from this stream
+     */
+    public void setCompleter(Completer completer)
+    {
+        this.completer = completer;
+        
+        textPane.getInputMap().put(KeyStroke.getKeyStroke(KeyEvent.VK_TAB, 0), "complete");
+        textPane.getActionMap().put("complete", new AbstractAction() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                completeInput();
+            }
+        });
+    }
+    
+    /**
+     * Completes the last word of the input being typed.
+     */
+    private void completeInput()
+    {
+        TerminalFilter filter = istream.terminalFilter;
+        
+        if(filter.isLocked())
+            return;
+        
+        Document document = textPane.getDocument();
+        int offset = filter.getInputOffset();
+        
+        try {
+            String input = document.getText(offset, document.getLength() - offset);
+            List<String> completions = completer.complete(input);
+            
+            if(completions.isEmpty()) {
+                Toolkit.getDefaultToolkit().beep();
+                return;
+            }
+            
+            int wordStart = input.length();
+            
+            while(wordStart > 0 && ! isWordSeparator(input.charAt(wordStart - 1)))
+                wordStart--;
+            
+            String common = CompletionIndex.getCommonPrefix(completions);
+            
+            if(completions.size() == 1)
+                replaceInput(offset + wordStart, common + " ");
+            else if(common.length() > input.length() - wordStart)
+                replaceInput(offset + wordStart, common);
+            else
+                showCompletions(completions, offset + wordStart);
+        }
+        catch(BadLocationException e) {
+            if(Debug.isEnabled())
+                e.printStackTrace();
+        }
+    }
+    
+    /**
+     * Tells whether a character separates the words of a command line.
+     * @param c The character
+     * @return True if the character is a whitespace or an operator, false otherwise
+     */
+    private static boolean isWordSeparator(char c)
+    {
+        return Character.isWhitespace(c) || c == CommandLine.SEQUENCE || c == CommandLine.BACKGROUND
+                || c == CommandLine.PIPE;
+    }
+    
+    /**
+     * Shows the completions of a word in a menu under the caret, so one of them can be chosen.
+     * @param completions The completions of the word
+     * @param wordStart Offset where the word starts
+     * @throws BadLocationException If the caret is not in the document
+     */
+    private void showCompletions(List<String> completions, final int wordStart) throws BadLocationException
+    {
+        JPopupMenu menu = new JPopupMenu();
+        
+        for(final String completion : completions.subList(0, Math.min(completions.size(), COMPLETIONS_SHOWN))) {
+            JMenuItem item = new JMenuItem(completion);
+            item.addActionListener(new ActionListener() {
+                @Override
+                public void actionPerformed(ActionEvent e) {
+                    replaceInput(wordStart, completion + " ");
+                }
+            });
+            
+            menu.add(item);
+        }
+        
+        if(completions.size() > COMPLETIONS_SHOWN) {
+            JMenuItem more = new JMenuItem((completions.size() - COMPLETIONS_SHOWN) + " more...");
+            more.setEnabled(false);
+            menu.add(more);
+        }
+        
+        Rectangle caret = textPane.modelToView(textPane.getCaretPosition());
+        menu.show(textPane, caret.x, caret.y + caret.height);
+    }
+    
+    /**
+     * Replaces the end of the input being typed.
+     * @param start Offset from where the input is replaced
+     * @param text The text that replaces the end of the input
+     */
+    private void replaceInput(int start, String text)
+    {
+        Document document = textPane.getDocument();
+        
+        try {
+            document.remove(start, document.getLength() - start);
+            document.insertString(start, text, null);
+            textPane.setCaretPosition(document.getLength());
+        }
+        catch(BadLocationException e) {
+            if(Debug.isEnabled())
+                e.printStackTrace();
+        }
+    }
+    
+    /**
+     * Replaces the input being typed by the previous or next line of the history that matches the query.
+     * A new search starts with the input as query when it has been edited since the last line shown.
+     * @param isBackward True to show the previous line, false to show the next one
+     * @param isPrefix True if the line must start with the query, false if it only has to contain it
+     */
+    private void browseHistory(boolean isBackward, boolean isPrefix)
+    {
+        TerminalFilter filter = istream.terminalFilter;
+        
+        if(filter.isLocked())
+            return;
+        
+        Document document = textPane.getDocument();
+        int offset = filter.getInputOffset();
+        
+        try {
+            String input = document.getText(offset, document.getLength() - offset);
+            
+            if(! input.equals(shown) || isPrefix != isPrefixSearch) {
+                query = input;
+                position = history.size();
+                isPrefixSearch = isPrefix;
+            }
+            
+            int found = isBackward ? history.findPrevious(query, position, isPrefix)
+                    : history.findNext(query, position, isPrefix);
+            
+            if(found < 0 && isBackward) {
+                Toolkit.getDefaultToolkit().beep();
+                return;
+            }
+            
+            // Going past the most recent line shows the query again
+            position = found < 0 ? history.size() : found;
+            shown = found < 0 ? query : history.get(found);
+            
+            replaceInput(offset, shown);
+        }
+        catch(BadLocationException e) {
+            if(Debug.isEnabled())
+                e.printStackTrace();
+        }
+    }
+    
+    /**
+     * Action of the keys that browse the history.
+     */
+    private class HistoryAction extends AbstractAction
+    {
+        private boolean isBackward;
+        private boolean isPrefix;
+        
+        /**
+         * Creates a new action that browses the history.
+         * @param isBackward True to show the previous line, false to show the next one
+         * @param isPrefix True if the line must start with the text typed, false if it only has to contain it
+         */
+        public HistoryAction(boolean isBackward, boolean isPrefix)
+        {
+            this.isBackward = isBackward;
+            this.isPrefix = isPrefix;
+        }
+        
+        /**
+         * Browses the history.
+         * @param e The key event
+         */
+        @Override
+        public void actionPerformed(ActionEvent e)
+        {
+            browseHistory(isBackward, isPrefix);
+        }
+    }
 }
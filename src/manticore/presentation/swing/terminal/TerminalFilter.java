@@ -67,6 +67,24 @@ public class TerminalFilter extends DocumentFilter
         return read;
     }
     
+    /**
+     * Tells whether the input is locked, so the user cannot type.
+     * @return True if the input is locked, false otherwise
+     */
+    public boolean isLocked()
+    {
+        return isLocked;
+    }
+    
+    /**
+     * Gets the offset where the input being typed starts.
+     * @return The offset where the input starts
+     */
+    public int getInputOffset()
+    {
+        return lockOffset;
+    }
+    
     /**
      * Unlocks the input stream.
      */
@@ -2,6 +2,7 @@ package manticore.presentation.terminal;
 
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Iterator;
 import java.util.List;
 
 /**
@@ -96,6 +97,16 @@ abstract public class AdvancedCommandGroup extends CommandGroup
         return iostream.readFloat(question);
     }
     
+    /**
+     * Tells whether the command being executed has been cancelled, because it has been killed or it has
+     * timed out. Commands that take long should check it regularly and return as soon as possible.
+     * @return True if the command being executed has been cancelled, false otherwise
+     */
+    public boolean isCancelled()
+    {
+        return Job.isCurrentCancelled();
+    }
+    
     /**
      * Prints a line to the output stream.
      * @param line Line to print
@@ -106,12 +117,47 @@ abstract public class AdvancedCommandGroup extends CommandGroup
     }
     
     /**
-     * Prints a collection of objects.
+     * Prints a collection of objects, a page at a time.
      * @param collection The collection of objects to print
+     * @see #print(Iterator)
      */
     public void print(Collection<?> collection)
     {
-        for(Object o : collection)
-            println(o.toString());
+        print(collection.iterator());
+    }
+    
+    /**
+     * Prints the objects of an iterable, a page at a time.
+     * @param iterable The objects to print
+     * @see #print(Iterator)
+     */
+    public void print(Iterable<?> iterable)
+    {
+        print(iterable.iterator());
+    }
+    
+    /**
+     * Prints the objects of an iterator as they are produced, a page at a time.
+     * When the IOStream is interactive, the user is asked before every page and the next objects are not
+     * produced if the user quits. Non-interactive IOStreams, like the ones of batch runs, background jobs and
+     * pipes, are not paged. The printing stops too if the command is cancelled.
+     * @param iterator The objects to print
+     */
+    public void print(Iterator<?> iterator)
+    {
+        int pageSize = iostream.getPageSize();
+        int printed = 0;
+        
+        while(! isCancelled() && iterator.hasNext()) {
+            if(pageSize > 0 && printed == pageSize) {
+                if(! iostream.readNextPage())
+                    return;
+                
+                printed = 0;
+            }
+            
+            println(String.valueOf(iterator.next()));
+            printed++;
+        }
     }
 }
@@ -1,9 +1,10 @@
 package manticore.presentation.terminal;
 
-import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import manticore.Debug;
 import manticore.Options;
+import manticore.OptionsSchema;
+import manticore.metrics.Histogram;
 import manticore.presentation.terminal.annotation.CommandOptions;
 
 /**
@@ -38,9 +39,19 @@ public class CommandAction
     private String[] options;
     
     /**
-     * The action that this command represents
+     * The options that this command accepts, indexed to be held as bits
      */
-    private Method action;
+    private OptionsSchema optionsSchema;
+    
+    /**
+     * The invoker of the action, generated at compile time or resolved when the command group is scanned
+     */
+    private CommandInvoker invoker;
+    
+    /**
+     * Latencies of the executions of this command, in nanoseconds
+     */
+    private Histogram latency = new Histogram();
     
     /**
      * Creates a new command with the given command group, action and descripcion.
@@ -55,7 +66,7 @@ public class CommandAction
         if(name.startsWith("_"))
             name = name.substring(1);
         
-        this.action = action;
+        this.invoker = new ReflectiveInvoker(action);
         this.description = description;
         this.commandGroup = commandGroup;
         
@@ -63,6 +74,28 @@ public class CommandAction
             options = action.getAnnotation(CommandOptions.class).value();
         else
             options = new String[]{};
+        
+        optionsSchema = new OptionsSchema(options);
+    }
+    
+    /**
+     * Creates a new command with the given command group, name, description, options and direct invoker.
+     * Used with the metadata generated at compile time, so no reflection is needed.
+     * @param commandGroup The command group of this command
+     * @param name Name of the command
+     * @param description Description of the command
+     * @param options Options that the command accepts
+     * @param invoker Invoker of the method of the command group that this command represents
+     */
+    public CommandAction(CommandGroup commandGroup, String name, String description, String[] options,
+            CommandInvoker invoker)
+    {
+        this.commandGroup = commandGroup;
+        this.name = name;
+        this.description = description;
+        this.options = options;
+        this.invoker = invoker;
+        optionsSchema = new OptionsSchema(options);
     }
     
     /**
@@ -111,6 +144,24 @@ public class CommandAction
         return options;
     }
     
+    /**
+     * Returns the options that this command accepts, indexed to be held as bits.
+     * @return The options schema of this command
+     */
+    public OptionsSchema getOptionsSchema()
+    {
+        return optionsSchema;
+    }
+    
+    /**
+     * Gets the latencies of the executions of this command, including the reading of its options.
+     * @return A histogram of nanoseconds
+     */
+    public Histogram getLatency()
+    {
+        return latency;
+    }
+    
     /**
      * Executes the command with the given options,
      * @param currentOptions Options that should be used in the execution of the command
@@ -118,18 +169,9 @@ public class CommandAction
      */
     public void exec(Options currentOptions) throws Throwable
     {
-        try {
-            if(options.length == 0) {
-                if(currentOptions.hasOptions())
-                    Debug.println("This command does not accept options.");
-                
-                action.invoke(commandGroup);
-            }
-            else
-                action.invoke(commandGroup, currentOptions);
-        }
-        catch(InvocationTargetException e) {
-            throw e.getCause();
-        }
+        if(options.length == 0 && currentOptions.hasOptions())
+            Debug.println("This command does not accept options.");
+        
+        invoker.invoke(commandGroup, currentOptions);
     }
 }
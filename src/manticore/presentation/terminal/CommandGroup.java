@@ -1,9 +1,15 @@
 package manticore.presentation.terminal;
 
 import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import manticore.Options;
+import manticore.OptionsSchema;
 import manticore.Utils;
 import manticore.business.BusinessException;
 import manticore.presentation.terminal.annotation.Command;
@@ -19,6 +25,11 @@ public class CommandGroup
      */
     private static final int HELP_PADDING = 20;
     
+    /**
+     * Command methods identified by command group class, shared by all the instances in the process
+     */
+    private static ConcurrentMap<Class, List<Method>> commandMethods = new ConcurrentHashMap();
+    
     /**
      * The input/output streams to read/print data from/to the user
      */
@@ -35,7 +46,7 @@ public class CommandGroup
     private String description = "No description";
     
     /**
-     * Map of available commands
+     * Map of available commands, scanned on first use unless they are set beforehand
      */
     private Map<String, CommandAction> commands;
     
@@ -44,7 +55,7 @@ public class CommandGroup
      */
     public CommandGroup()
     {
-        scanCommands();
+        // Command actions are scanned on first use
     }
     
     /**
@@ -92,6 +103,39 @@ public class CommandGroup
         this.iostream = iostream;
     }
     
+    /**
+     * Sets the command actions of the command group, so they do not need to be scanned using reflection.
+     * @param actions The command actions of the command group
+     */
+    public synchronized void setCommands(List<CommandAction> actions)
+    {
+        commands = new HashMap();
+        
+        for(CommandAction action : actions)
+            commands.put(action.getName(), action);
+    }
+    
+    /**
+     * Gets the command actions available in the command group.
+     * @return The command actions of the command group
+     */
+    public Collection<CommandAction> getCommandActions()
+    {
+        return getCommands().values();
+    }
+    
+    /**
+     * Gets the command actions available in the command group, scanning them the first time if needed.
+     * @return Map of the command actions identified by name
+     */
+    private synchronized Map<String, CommandAction> getCommands()
+    {
+        if(commands == null)
+            scanCommands();
+        
+        return commands;
+    }
+    
     /**
      * Scans the command actions available in the command group.
      */
@@ -99,11 +143,8 @@ public class CommandGroup
     {
         commands = new HashMap();
         
-        for(Method method : getClass().getMethods())
+        for(Method method : getCommandMethods(getClass()))
         {
-            if(! method.isAnnotationPresent(Command.class))
-                continue;
-            
             Command commandInfo = method.getAnnotation(Command.class);
             
             CommandAction command = new CommandAction(this, method, commandInfo.value());
@@ -111,6 +152,56 @@ public class CommandGroup
         }
     }
     
+    /**
+     * Describes the command actions of a command group class without creating the command group. The command
+     * actions are not bound to any command group, so they cannot be executed.
+     * @param groupClass Class of the command group
+     * @return The command actions
+     */
+    public static List<CommandAction> describeCommands(Class groupClass)
+    {
+        List<CommandAction> commands = new ArrayList();
+        
+        for(Method method : getCommandMethods(groupClass))
+            commands.add(new CommandAction(null, method, method.getAnnotation(Command.class).value()));
+        
+        return commands;
+    }
+    
+    /**
+     * Returns the methods of a command group class annotated as commands, looking them up only the first
+     * time that the class is scanned in the process.
+     * @param groupClass Class of the command group
+     * @return The command methods
+     */
+    private static List<Method> getCommandMethods(Class groupClass)
+    {
+        List<Method> methods = commandMethods.get(groupClass);
+        
+        if(methods != null)
+            return methods;
+        
+        methods = new ArrayList();
+        
+        for(Method method : groupClass.getMethods()) {
+            if(method.isAnnotationPresent(Command.class))
+                methods.add(method);
+        }
+        
+        List<Method> previous = commandMethods.putIfAbsent(groupClass, methods);
+        
+        return previous == null ? methods : previous;
+    }
+    
+    /**
+     * Forgets the command methods looked up so far, so the command group classes can be unloaded.
+     * The command groups already created keep their command actions.
+     */
+    public static void clearCommandMethods()
+    {
+        commandMethods.clear();
+    }
+    
     /**
      * Executes a command action given its name.
      * @param commandName The command name
@@ -118,13 +209,20 @@ public class CommandGroup
      */
     public void exec(String commandName) throws Throwable
     {
-        if(! commands.containsKey(commandName))
-            throw new BusinessException(commandName + " command not found on subject " + name + ".");
+        CommandAction command = getCommands().get(commandName);
         
-        CommandAction command = commands.get(commandName);
+        if(command == null)
+            throw new BusinessException(commandName + " command not found on subject " + name + ".");
          
-        Options currentOptions = getOptions(command);
-        commands.get(commandName).exec(currentOptions);
+        long start = System.nanoTime();
+        
+        try {
+            Options currentOptions = getOptions(command);
+            command.exec(currentOptions);
+        }
+        finally {
+            command.getLatency().record(System.nanoTime() - start);
+        }
     }
     
     /**
@@ -134,15 +232,16 @@ public class CommandGroup
      */
     private Options getOptions(CommandAction command)
     {
-        Options options = new Options();
+        OptionsSchema schema = command.getOptionsSchema();
+        Options options = new Options(schema);
         
-        for(String commandOption : command.getOptions())
-            options.disable(commandOption);
-        
-        while(iostream.hasNext(command.getOptionsPattern()))
-        {
-            String option = command.getOptionName(iostream.readString());
-            options.enable(option);
+        while(iostream.hasNextOption()) {
+            int index = iostream.readOption(schema);
+            
+            if(index >= 0)
+                options.enable(index);
+            else
+                options.enable(iostream.readOption());
         }
         
         return options;
@@ -156,7 +255,7 @@ public class CommandGroup
     {
         iostream.println("Available commands for " + name + ":");
         
-        for(CommandAction command : commands.values())
+        for(CommandAction command : getCommands().values())
         {
             iostream.println("    " + Utils.padRight(command.getName() + " " + name, HELP_PADDING)
                     + command.getDescription());
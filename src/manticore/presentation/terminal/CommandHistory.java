@@ -0,0 +1,318 @@
+package manticore.presentation.terminal;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * Persistent history of command lines, stored in a memory-mapped file of a fixed size.
+ * Command lines are appended to the file as UTF-8 lines after a small header that holds where the last
+ * complete line ends, so a line written partially is discarded. When the file is full, the oldest half of
+ * the history is dropped.
+ *
+ * Only the offsets of the lines are kept in memory. Loading the history scans the file once without decoding
+ * it, and searches compare the encoded bytes in place, so they do not create a string per line.
+ * @author hector
+ */
+public class CommandHistory
+{
+    /**
+     * Default size of the history file, in bytes
+     */
+    public static final int DEFAULT_CAPACITY = 4 * 1024 * 1024;
+    
+    /**
+     * Number that identifies a history file
+     */
+    private static final int MAGIC = 0x4d484953;
+    
+    /**
+     * Size of the header: the magic number and the end of the last line
+     */
+    private static final int HEADER_SIZE = 8;
+    
+    /**
+     * Position of the end of the last line in the header
+     */
+    private static final int END_POSITION = 4;
+    
+    /**
+     * Byte that ends every line
+     */
+    private static final byte LINE_END = '\n';
+    
+    /**
+     * Charset of the lines
+     */
+    private static final Charset CHARSET = Charset.forName("UTF-8");
+    
+    /**
+     * The history file
+     */
+    private RandomAccessFile file;
+    
+    /**
+     * The history file mapped in memory
+     */
+    private MappedByteBuffer buffer;
+    
+    /**
+     * Position after the end of the last line
+     */
+    private int end;
+    
+    /**
+     * Position where every line starts, from the oldest to the most recent one
+     */
+    private int[] offsets;
+    
+    /**
+     * Number of lines in the history
+     */
+    private int count;
+    
+    /**
+     * Opens or creates a history file of the default size.
+     * @param path Path of the history file
+     * @throws IOException If the file cannot be opened or mapped
+     */
+    public CommandHistory(String path) throws IOException
+    {
+        this(path, DEFAULT_CAPACITY);
+    }
+    
+    /**
+     * Opens or creates a history file of the given size.
+     * If the file holds more lines than fit in the given size, the history starts empty.
+     * @param path Path of the history file
+     * @param capacity Size of the history file, in bytes
+     * @throws IOException If the file cannot be opened or mapped
+     */
+    public CommandHistory(String path, int capacity) throws IOException
+    {
+        file = new RandomAccessFile(path, "rw");
+        buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+        offsets = new int[1024];
+        count = 0;
+        
+        load();
+    }
+    
+    /**
+     * Builds the offsets of the lines in the history file, initializing the file if it is not valid.
+     */
+    private void load()
+    {
+        int limit = buffer.getInt(END_POSITION);
+        
+        if(buffer.getInt(0) != MAGIC || limit < HEADER_SIZE || limit > buffer.capacity()) {
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(END_POSITION, HEADER_SIZE);
+            end = HEADER_SIZE;
+            return;
+        }
+        
+        int start = HEADER_SIZE;
+        
+        for(int i = HEADER_SIZE; i < limit; i++) {
+            if(buffer.get(i) == LINE_END) {
+                addOffset(start);
+                start = i + 1;
+            }
+        }
+        
+        end = start;
+    }
+    
+    /**
+     * Appends a command line to the history. Empty lines, lines that span several lines and lines equal to
+     * the most recent one are not added.
+     * @param line The command line
+     */
+    public synchronized void add(String line)
+    {
+        if(line == null || line.trim().isEmpty() || line.indexOf(LINE_END) >= 0)
+            return;
+        
+        if(count > 0 && line.equals(get(count - 1)))
+            return;
+        
+        byte[] bytes = line.getBytes(CHARSET);
+        
+        // A line that does not fit in half the file would drop the whole history
+        if(bytes.length + 1 > (buffer.capacity() - HEADER_SIZE) / 2)
+            return;
+        
+        if(end + bytes.length + 1 > buffer.capacity())
+            compact();
+        
+        buffer.position(end);
+        buffer.put(bytes);
+        buffer.put(LINE_END);
+        
+        addOffset(end);
+        end += bytes.length + 1;
+        buffer.putInt(END_POSITION, end);
+    }
+    
+    /**
+     * Drops the oldest lines of the history, keeping the most recent ones that fit in half the file.
+     */
+    private void compact()
+    {
+        int half = (buffer.capacity() - HEADER_SIZE) / 2;
+        int first = count;
+        
+        while(first > 0 && end - offsets[first - 1] <= half)
+            first--;
+        
+        int from = first < count ? offsets[first] : end;
+        byte[] kept = new byte[end - from];
+        
+        buffer.position(from);
+        buffer.get(kept);
+        
+        // The history is marked as empty while it is moved, so an interrupted move does not leave garbage
+        buffer.putInt(END_POSITION, HEADER_SIZE);
+        buffer.position(HEADER_SIZE);
+        buffer.put(kept);
+        
+        for(int i = first; i < count; i++)
+            offsets[i - first] = offsets[i] - from + HEADER_SIZE;
+        
+        count -= first;
+        end = HEADER_SIZE + kept.length;
+        buffer.putInt(END_POSITION, end);
+    }
+    
+    /**
+     * Adds the offset of a new line.
+     * @param offset Position where the line starts
+     */
+    private void addOffset(int offset)
+    {
+        if(count == offsets.length)
+            offsets = Arrays.copyOf(offsets, count * 2);
+        
+        offsets[count++] = offset;
+    }
+    
+    /**
+     * Gets the number of lines in the history.
+     * @return The number of lines in the history
+     */
+    public synchronized int size()
+    {
+        return count;
+    }
+    
+    /**
+     * Gets a line of the history.
+     * @param index Index of the line, from 0 for the oldest one to size() - 1 for the most recent one
+     * @return The line
+     */
+    public synchronized String get(int index)
+    {
+        if(index < 0 || index >= count)
+            throw new IndexOutOfBoundsException("There is no line " + index + " in the history");
+        
+        byte[] bytes = new byte[getLength(index)];
+        
+        buffer.position(offsets[index]);
+        buffer.get(bytes);
+        
+        return new String(bytes, CHARSET);
+    }
+    
+    /**
+     * Finds the most recent line before the given index that contains or starts with a query.
+     * @param query The text to find
+     * @param before Index where the search starts, excluded. Use size() to search the whole history
+     * @param isPrefix True if the line must start with the query, false if it only has to contain it
+     * @return The index of the line found, or -1 if no line matches
+     */
+    public synchronized int findPrevious(String query, int before, boolean isPrefix)
+    {
+        byte[] pattern = query.getBytes(CHARSET);
+        
+        for(int i = Math.min(before, count) - 1; i >= 0; i--) {
+            if(matches(i, pattern, isPrefix))
+                return i;
+        }
+        
+        return -1;
+    }
+    
+    /**
+     * Finds the oldest line after the given index that contains or starts with a query.
+     * @param query The text to find
+     * @param after Index where the search starts, excluded. Use -1 to search the whole history
+     * @param isPrefix True if the line must start with the query, false if it only has to contain it
+     * @return The index of the line found, or -1 if no line matches
+     */
+    public synchronized int findNext(String query, int after, boolean isPrefix)
+    {
+        byte[] pattern = query.getBytes(CHARSET);
+        
+        for(int i = Math.max(after + 1, 0); i < count; i++) {
+            if(matches(i, pattern, isPrefix))
+                return i;
+        }
+        
+        return -1;
+    }
+    
+    /**
+     * Tells whether a line contains or starts with the given bytes. As UTF-8 is self-synchronizing, comparing
+     * the encoded bytes is the same as comparing the characters.
+     * @param index Index of the line
+     * @param pattern The encoded query
+     * @param isPrefix True if the line must start with the query, false if it only has to contain it
+     * @return True if the line matches, false otherwise
+     */
+    private boolean matches(int index, byte[] pattern, boolean isPrefix)
+    {
+        int start = offsets[index];
+        int last = isPrefix ? 0 : getLength(index) - pattern.length;
+        
+        if(pattern.length > getLength(index))
+            return false;
+        
+        for(int shift = 0; shift <= last; shift++) {
+            int i = 0;
+            
+            while(i < pattern.length && buffer.get(start + shift + i) == pattern[i])
+                i++;
+            
+            if(i == pattern.length)
+                return true;
+        }
+        
+        return false;
+    }
+    
+    /**
+     * Gets the length of a line, without its end.
+     * @param index Index of the line
+     * @return The length of the line, in bytes
+     */
+    private int getLength(int index)
+    {
+        int next = index + 1 < count ? offsets[index + 1] : end;
+        
+        return next - offsets[index] - 1;
+    }
+    
+    /**
+     * Writes the history to the disk and closes the history file.
+     * @throws IOException If the file cannot be closed
+     */
+    public synchronized void close() throws IOException
+    {
+        buffer.force();
+        file.close();
+    }
+}
@@ -0,0 +1,19 @@
+package manticore.presentation.terminal;
+
+import manticore.Options;
+
+/**
+ * Invokes the method of a command action directly, without reflection.
+ * The invokers are generated at compile time by the CommandIndexProcessor.
+ * @author hector
+ */
+public interface CommandInvoker
+{
+    /**
+     * Invokes the command action on the given command group.
+     * @param commandGroup The command group of the command action
+     * @param options Options that should be used in the execution of the command
+     * @throws Throwable Any exception thrown by the command action
+     */
+    public void invoke(CommandGroup commandGroup, Options options) throws Throwable;
+}
@@ -0,0 +1,136 @@
+package manticore.presentation.terminal;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Represents a pipeline of commands of a command line: one or more commands separated by '|', where the
+ * output printed by every command is the input of the next one.
+ *
+ * A command line is parsed into several pipelines separated by ';', which run one after another, or by '&',
+ * which runs the pipeline before it in background. The operators inside quotes are not taken into account.
+ *
+ * Example:
+ * list post --all | count post ; hello post bob & list user
+ *
+ * @author hector
+ */
+public class CommandLine
+{
+    /**
+     * Operator that sequences pipelines
+     */
+    public static final char SEQUENCE = ';';
+    
+    /**
+     * Operator that runs the previous pipeline in background
+     */
+    public static final char BACKGROUND = '&';
+    
+    /**
+     * Operator that pipes the output of a command into the input of the next one
+     */
+    public static final char PIPE = '|';
+    
+    /**
+     * The commands of the pipeline
+     */
+    private List<String> commands;
+    
+    /**
+     * Tells whether the pipeline runs in background
+     */
+    private boolean isBackground;
+    
+    /**
+     * Creates a new empty pipeline.
+     */
+    private CommandLine()
+    {
+        commands = new ArrayList();
+        isBackground = false;
+    }
+    
+    /**
+     * Gets the commands of the pipeline.
+     * @return The commands of the pipeline, in order
+     */
+    public List<String> getCommands()
+    {
+        return commands;
+    }
+    
+    /**
+     * Tells whether the pipeline runs in background.
+     * @return True if the pipeline runs in background, false otherwise
+     */
+    public boolean isBackground()
+    {
+        return isBackground;
+    }
+    
+    /**
+     * Tells whether a line contains any operator, so it does not need to be parsed if it does not.
+     * @param line A command line
+     * @return True if the line contains an operator, false otherwise
+     */
+    public static boolean hasOperators(String line)
+    {
+        return line.indexOf(SEQUENCE) >= 0 || line.indexOf(BACKGROUND) >= 0 || line.indexOf(PIPE) >= 0;
+    }
+    
+    /**
+     * Parses a command line into its pipelines. Empty commands are skipped.
+     * @param line The command line
+     * @return The pipelines of the command line, in order
+     */
+    public static List<CommandLine> parse(String line)
+    {
+        List<CommandLine> pipelines = new ArrayList();
+        CommandLine pipeline = new CommandLine();
+        int start = 0;
+        char quote = 0;
+        
+        for(int i = 0; i <= line.length(); i++) {
+            char c = i < line.length() ? line.charAt(i) : SEQUENCE;
+            
+            if(quote != 0) {
+                if(c == '\\')
+                    i++;
+                else if(c == quote)
+                    quote = 0;
+                
+                if(i < line.length())
+                    continue;
+                
+                c = SEQUENCE;
+            }
+            
+            if(c == '"' || c == '\'') {
+                quote = c;
+                continue;
+            }
+            
+            if(c != SEQUENCE && c != BACKGROUND && c != PIPE)
+                continue;
+            
+            String command = line.substring(start, Math.min(i, line.length())).trim();
+            start = i + 1;
+            
+            if(! command.isEmpty())
+                pipeline.commands.add(command);
+            
+            if(c == PIPE)
+                continue;
+            
+            pipeline.isBackground = c == BACKGROUND;
+            
+            if(! pipeline.commands.isEmpty())
+                pipelines.add(pipeline);
+            
+            pipeline = new CommandLine();
+        }
+        
+        return pipelines;
+    }
+}
@@ -0,0 +1,22 @@
+package manticore.presentation.terminal;
+
+/**
+ * A static index of the command groups of a package, generated at compile time by the
+ * CommandIndexProcessor as a class named CommandIndex in the package of the command groups.
+ * When present, the terminal uses it instead of looking up and scanning the command groups by reflection.
+ * @author hector
+ */
+public interface CommandRegistry
+{
+    /**
+     * Simple name of the generated registry class.
+     */
+    public static final String INDEX_CLASS = "CommandIndex";
+    
+    /**
+     * Gets the indexed command subject of the command group with the given simple class name.
+     * @param groupName Simple name of the command group class, for example PostCommands
+     * @return The indexed command subject, or null if there is no such command group
+     */
+    public IndexedSubject getSubject(String groupName);
+}
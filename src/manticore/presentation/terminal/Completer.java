@@ -0,0 +1,18 @@
+package manticore.presentation.terminal;
+
+import java.util.List;
+
+/**
+ * Completes the last word of a command line being typed.
+ * @author hector
+ */
+public interface Completer
+{
+    /**
+     * Returns the words that can complete the last word of a command line.
+     * @param line The command line typed so far
+     * @return The words that start with the last word of the line, or with nothing if the line ends with a
+     * whitespace, in alphabetical order
+     */
+    public List<String> complete(String line);
+}
@@ -0,0 +1,146 @@
+package manticore.presentation.terminal;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Prefix tree of words used to complete what the user types in a terminal.
+ * Completing a prefix only visits the nodes of the prefix and of the words that start with it, so it takes
+ * the same time no matter how many other words the index has.
+ * @author hector
+ */
+public class CompletionIndex
+{
+    /**
+     * The node of the empty prefix
+     */
+    private Node root;
+    
+    /**
+     * Number of words in the index
+     */
+    private int size;
+    
+    /**
+     * Creates a new empty completion index.
+     */
+    public CompletionIndex()
+    {
+        root = new Node();
+        size = 0;
+    }
+    
+    /**
+     * Adds a word to the index, if it is not in the index yet.
+     * @param word The word to add
+     */
+    public void add(String word)
+    {
+        Node node = root;
+        
+        for(int i = 0; i < word.length(); i++) {
+            char c = word.charAt(i);
+            Node child = node.children.get(c);
+            
+            if(child == null) {
+                child = new Node();
+                node.children.put(c, child);
+            }
+            
+            node = child;
+        }
+        
+        if(! node.isWord) {
+            node.isWord = true;
+            size++;
+        }
+    }
+    
+    /**
+     * Gets the number of words in the index.
+     * @return The number of words in the index
+     */
+    public int size()
+    {
+        return size;
+    }
+    
+    /**
+     * Returns the words of the index that start with the given prefix.
+     * @param prefix The prefix typed
+     * @return The words that start with the prefix, in alphabetical order
+     */
+    public List<String> complete(String prefix)
+    {
+        List<String> words = new ArrayList();
+        Node node = root;
+        
+        for(int i = 0; i < prefix.length() && node != null; i++)
+            node = node.children.get(prefix.charAt(i));
+        
+        if(node != null)
+            collect(node, new StringBuilder(prefix), words);
+        
+        return words;
+    }
+    
+    /**
+     * Adds the words under a node to a list.
+     * @param node The node
+     * @param word The prefix of the node, which is restored before returning
+     * @param words The list where the words are added
+     */
+    private void collect(Node node, StringBuilder word, List<String> words)
+    {
+        if(node.isWord)
+            words.add(word.toString());
+        
+        for(Map.Entry<Character, Node> child : node.children.entrySet()) {
+            word.append(child.getKey());
+            collect(child.getValue(), word, words);
+            word.setLength(word.length() - 1);
+        }
+    }
+    
+    /**
+     * Returns the longest prefix shared by some words.
+     * @param words The words
+     * @return The longest common prefix, or an empty string if there are no words
+     */
+    public static String getCommonPrefix(List<String> words)
+    {
+        if(words.isEmpty())
+            return "";
+        
+        String prefix = words.get(0);
+        
+        for(String word : words) {
+            int i = 0;
+            
+            while(i < prefix.length() && i < word.length() && prefix.charAt(i) == word.charAt(i))
+                i++;
+            
+            prefix = prefix.substring(0, i);
+        }
+        
+        return prefix;
+    }
+    
+    /**
+     * Node of the prefix tree.
+     */
+    private static class Node
+    {
+        /**
+         * The nodes of the prefixes one character longer, identified by that character
+         */
+        private Map<Character, Node> children = new TreeMap();
+        
+        /**
+         * Tells whether the prefix of the node is a word of the index
+         */
+        private boolean isWord;
+    }
+}
@@ -1,26 +1,49 @@
 package manticore.presentation.terminal;
 
+import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.PrintStream;
+import java.io.StringReader;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.NoSuchElementException;
-import java.util.Scanner;
 import manticore.Debug;
+import manticore.OptionsSchema;
 
 /**
  * Tool for reading and printing to input/output streams.
+ * The output is buffered and flushed when waiting for input, when the buffer reaches a threshold or when
+ * requested explicitly, so printing many lines does not flush the output stream on every line.
+ * 
+ * Every thread can open its own channel, with its own input buffer, optionally reading from a piped input
+ * and printing into a captured output instead of the output stream. This way, command groups that share
+ * an IOStream can run commands in background or piped to each other.
  * @author hector
  */
 public class IOStream
 {
     /**
-     * Input buffer
+     * Size of the output buffer, in bytes
      */
-    private Scanner ibuffer;
+    private static final int OUTPUT_BUFFER_SIZE = 16 * 1024;
+    
+    /**
+     * Number of characters printed after which the output is flushed, which is no more than the buffer holds
+     */
+    private static final int FLUSH_THRESHOLD = OUTPUT_BUFFER_SIZE;
+    
+    /**
+     * Default number of lines of a page of paged output
+     */
+    private static final int PAGE_SIZE = 20;
+    
+    /**
+     * The answer that stops paged output
+     */
+    private static final String QUIT_PAGER = "q";
     
     /**
      * Input stream
@@ -32,11 +55,41 @@ public class IOStream
      */
     private PrintStream ostream;
     
+    /**
+     * Buffered stream where the output is printed before being flushed to the output stream
+     */
+    private PrintStream output;
+    
+    /**
+     * Number of characters printed since the last flush
+     */
+    private int pendingChars;
+    
     /**
      * Input prompt
      */
     private String prompt;
     
+    /**
+     * Number of lines of a page of paged output, or 0 to not page it
+     */
+    private int pageSize;
+    
+    /**
+     * Tells whether the input stream has ended
+     */
+    private boolean isEndOfInput;
+    
+    /**
+     * The channel used by the threads that have not opened their own
+     */
+    private Channel main;
+    
+    /**
+     * The channel opened by the current thread, if any
+     */
+    private ThreadLocal<Channel> channels;
+    
     /**
      * Creates a new IOStream with the input and output streams given.
      * @param istream An input stream
@@ -46,8 +99,94 @@ public class IOStream
     {
         this.istream = new BufferedReader(new InputStreamReader(istream));
         this.ostream = ostream;
-        ibuffer = new Scanner("");
+        output = new PrintStream(new BufferedOutputStream(ostream, OUTPUT_BUFFER_SIZE), false);
+        pendingChars = 0;
         prompt = ">";
+        pageSize = PAGE_SIZE;
+        isEndOfInput = false;
+        main = new Channel(null, null, null);
+        main.isInteractive = true;
+        channels = new ThreadLocal();
+    }
+    
+    /**
+     * Opens a non-interactive channel for the current thread, until it is closed.
+     * @param input The input that the channel reads once its input buffer is empty, or null for no input
+     * @param isCaptured True to capture the output of the channel, false to print it in the output stream
+     */
+    public void openChannel(String input, boolean isCaptured)
+    {
+        channels.set(new Channel(input == null ? null : new BufferedReader(new StringReader(input)),
+                isCaptured ? new ByteArrayOutputStream() : null, channels.get()));
+    }
+    
+    /**
+     * Closes the channel of the current thread, restoring the channel that was open before it, if any.
+     * @return The output captured by the channel, or null if its output was not captured
+     */
+    public String closeChannel()
+    {
+        Channel channel = channels.get();
+        
+        if(channel == null)
+            return null;
+        
+        if(channel.previous == null)
+            channels.remove();
+        else
+            channels.set(channel.previous);
+        
+        if(channel.captured == null)
+            return null;
+        
+        channel.output.flush();
+        
+        return channel.captured.toString();
+    }
+    
+    /**
+     * Returns the channel of the current thread.
+     * @return The channel opened by the current thread, or the main channel if it has not opened any
+     */
+    private Channel getChannel()
+    {
+        Channel channel = channels.get();
+        
+        return channel == null ? main : channel;
+    }
+    
+    /**
+     * Sets whether the IOStream is interactive. A non-interactive IOStream never prompts nor asks questions,
+     * never reads from the input stream, so its output is only flushed on the threshold or when requested,
+     * and answers with default values when the input buffer is empty.
+     * The output is flushed when the IOStream is made interactive again.
+     * @param isInteractive True to make the IOStream interactive, false otherwise
+     */
+    public void setInteractive(boolean isInteractive)
+    {
+        getChannel().isInteractive = isInteractive;
+        
+        if(isInteractive)
+            flush();
+    }
+    
+    /**
+     * Tells whether the IOStream is interactive.
+     * @return True if the IOStream is interactive, false otherwise
+     */
+    public boolean isInteractive()
+    {
+        return getChannel().isInteractive;
+    }
+    
+    /**
+     * Flushes the output printed so far.
+     */
+    public synchronized void flush()
+    {
+        output.flush();
+        ostream.flush();
+        pendingChars = 0;
     }
     
     /**
@@ -58,32 +197,113 @@ public class IOStream
         this.prompt = prompt;
     }
     
+    /**
+     * Sets the number of lines of a page of paged output.
+     * @param pageSize Number of lines of a page, or 0 to not page the output
+     */
+    public void setPageSize(int pageSize)
+    {
+        this.pageSize = pageSize;
+    }
+    
+    /**
+     * Gets the number of lines of a page of paged output.
+     * @return Number of lines of a page, or 0 if the output is not paged
+     */
+    public int getPageSize()
+    {
+        return getChannel().isInteractive ? pageSize : 0;
+    }
+    
+    /**
+     * Asks the user whether to show the next page of paged output, without touching the input buffer.
+     * A non-interactive IOStream always shows the next page.
+     * @return True to show the next page, false if the user quits or the input stream has ended
+     */
+    public boolean readNextPage()
+    {
+        if(! getChannel().isInteractive)
+            return true;
+        
+        String line = readLine("-- More (Enter to continue, " + QUIT_PAGER + " to quit) --");
+        
+        return line != null && ! line.trim().equalsIgnoreCase(QUIT_PAGER);
+    }
+    
     /**
      * Puts a string into the input buffer.
      * @param buffer The string to put into the buffer
      */
     public void putIntoInputBuffer(String buffer)
     {
-        this.ibuffer = new Scanner(buffer);
+        getChannel().ibuffer.reset(buffer);
     }
     
     /**
      * Reads a new line from the input stream.
-     * @return The read line
+     * @return The read line, or null if the input stream has ended or cannot be read
      */
     public String readLine()
     {
+        return readLine(prompt);
+    }
+    
+    /**
+     * Reads a new line from the input stream with the given prompt.
+     * @param prompt The prompt to print
+     * @return The read line, or null if the input stream has ended or cannot be read
+     */
+    private String readLine(String prompt)
+    {
+        String line = null;
+        
         try {
             // Print prompt when buffer empty
-            ostream.print(prompt + " ");
+            synchronized(this) {
+                output.print(prompt + " ");
+                flush();
+            }
             
-            return istream.readLine();
+            line = istream.readLine();
         }
         catch(IOException e) {
             Debug.println("Error reading line.");
+        }
+        
+        if(line == null)
+            isEndOfInput = true;
+        
+        return line;
+    }
+    
+    /**
+     * Reads new lines into the input buffer of a channel until it has one or more strings left.
+     * @param channel The channel
+     * @return True if the input buffer has one or more strings left, false if there is no more input
+     */
+    private boolean fillInputBuffer(Channel channel)
+    {
+        while(! channel.ibuffer.hasNext()) {
+            String line = null;
+            
+            if(channel.input != null) {
+                try {
+                    line = channel.input.readLine();
+                }
+                catch(IOException e) {
+                    Debug.println("Error reading piped line.");
+                }
+            }
+            else if(! isEndOfInput && channel.isInteractive)
+                line = readLine();
+            
+            if(line == null)
+                return false;
             
-            return readLine();
+            channel.ibuffer.reset(line);
         }
+        
+        return true;
     }
     
     /**
@@ -97,26 +317,25 @@ public class IOStream
     }
     
     public boolean readBoolean(String question) {
-        println(question + " (yes/no)");
+        if(getChannel().isInteractive)
+            println(question + " (yes/no)");
         
         return readBoolean();
     }
     
     /**
      * Reads a string from the input buffer/stream.
-     * @return The read string
+     * @return The read string, or an empty string if the input stream has ended or the IOStream is not
+     * interactive and the input buffer is empty
      */
     public String readString()
     {
-        try
-        {
-            return ibuffer.next();
-        }
-        catch(NoSuchElementException e)
-        {
-            putIntoInputBuffer(readLine());
-            return readString();
-        }
+        Channel channel = getChannel();
+        
+        if(! fillInputBuffer(channel))
+            return "";
+        
+        return channel.ibuffer.next();
     }
     
     /**
@@ -126,7 +345,9 @@ public class IOStream
      */
     public String readString(String question)
     {
-        if(! ibuffer.hasNext())
+        Channel channel = getChannel();
+        
+        if(channel.isInteractive && ! channel.ibuffer.hasNext())
             println(question);
         
         return readString();
@@ -142,6 +363,8 @@ public class IOStream
         
         strings.add(readString(question));
         
+        LineTokenizer ibuffer = getChannel().ibuffer;
+        
         while(ibuffer.hasNext())
             strings.add(ibuffer.next());
         
@@ -150,19 +373,22 @@ public class IOStream
     
     /**
      * Reads an integer from the input buffer/stream.
-     * @return The read integer
+     * The input buffer is discarded and a new line is read while the next string is not an integer.
+     * @return The read integer, or 0 if the input stream has ended or the IOStream is not interactive and
+     * there is no integer in the input buffer
      */
     public int readInt()
     {
-        try
-        {
-            return ibuffer.nextInt();   
-        }
-        catch(NoSuchElementException e)
-        {
-            putIntoInputBuffer(readLine());
-            return readInt();
+        Channel channel = getChannel();
+        
+        while(fillInputBuffer(channel)) {
+            if(channel.ibuffer.hasNextInt())
+                return channel.ibuffer.nextInt();
+            
+            channel.ibuffer.reset(null);
         }
+        
+        return 0;
     }
     
     /**
@@ -172,7 +398,9 @@ public class IOStream
      */
     public int readInt(String question)
     {
-        if(! ibuffer.hasNextInt())
+        Channel channel = getChannel();
+        
+        if(channel.isInteractive && ! channel.ibuffer.hasNextInt())
             println(question);
         
         return readInt();
@@ -180,19 +408,22 @@ public class IOStream
     
     /**
      * Reads a float from the input buffer/stream asking a question.
-     * @return The read float
+     * The input buffer is discarded and a new line is read while the next string is not a float.
+     * @return The read float, or 0 if the input stream has ended or the IOStream is not interactive and
+     * there is no float in the input buffer
      */
     public float readFloat()
     {
-        try
-        {
-            return ibuffer.nextFloat();   
-        }
-        catch(NoSuchElementException e)
-        {
-            putIntoInputBuffer(readLine());
-            return readFloat();
+        Channel channel = getChannel();
+        
+        while(fillInputBuffer(channel)) {
+            if(channel.ibuffer.hasNextFloat())
+                return channel.ibuffer.nextFloat();
+            
+            channel.ibuffer.reset(null);
         }
+        
+        return 0;
     }
     
     /**
@@ -202,18 +433,50 @@ public class IOStream
      */
     public float readFloat(String question)
     {
-        if(! ibuffer.hasNextFloat())
+        Channel channel = getChannel();
+        
+        if(channel.isInteractive && ! channel.ibuffer.hasNextFloat())
             println(question);
         
         return readFloat();
     }
     
+    /**
+     * Reads an option from the input buffer, without its dashes.
+     * @return The name of the option, or null if the next string in the input buffer is not an option
+     */
+    public String readOption()
+    {
+        LineTokenizer ibuffer = getChannel().ibuffer;
+        
+        if(! ibuffer.hasNextOption())
+            return null;
+        
+        return ibuffer.nextOption();
+    }
+    
+    /**
+     * Reads an option of the given schema from the input buffer.
+     * @param schema The options of the command
+     * @return The index of the option in the schema, or -1 if the next string in the input buffer is not an
+     * option of the schema, in which case it is not read
+     */
+    public int readOption(OptionsSchema schema)
+    {
+        LineTokenizer ibuffer = getChannel().ibuffer;
+        
+        if(! ibuffer.hasNextOption())
+            return -1;
+        
+        return ibuffer.nextOption(schema);
+    }
+    
     /**
      * Tells whether the input buffer has one or more strings left.
      * @return True if the input buffer has one or more strings left, false otherwise
      */
     public boolean hasNext() {
-        return ibuffer.hasNext();
+        return getChannel().ibuffer.hasNext();
     }
     
     /**
@@ -222,7 +485,7 @@ public class IOStream
      * @return True if the input buffer has one or more strings with that pattern, false otherwise
      */
     public boolean hasNext(String pattern) {
-        return ibuffer.hasNext(pattern);
+        return getChannel().ibuffer.hasNext(pattern);
     }
     
     /**
@@ -230,7 +493,15 @@ public class IOStream
      * @return True if the input buffer has one or more integers left, false otherwise
      */
     public boolean hasNextInt() {
-        return ibuffer.hasNextInt();
+        return getChannel().ibuffer.hasNextInt();
+    }
+    
+    /**
+     * Tells whether the next string in the input buffer is an option.
+     * @return True if the next string in the input buffer is an option, false otherwise
+     */
+    public boolean hasNextOption() {
+        return getChannel().ibuffer.hasNextOption();
     }
     
     /**
@@ -239,6 +510,80 @@ public class IOStream
      */
     public void println(String s)
     {
-        ostream.println(s);
+        Channel channel = getChannel();
+        
+        if(channel.output != null) {
+            channel.output.println(s);
+            return;
+        }
+        
+        printShared(s);
+    }
+    
+    /**
+     * Prints a string as a line in the shared output stream, flushing it once the threshold is reached.
+     * @param s The string to print
+     */
+    private synchronized void printShared(String s)
+    {
+        output.println(s);
+        pendingChars += String.valueOf(s).length() + 1;
+        
+        if(pendingChars >= FLUSH_THRESHOLD)
+            flush();
+    }
+    
+    /**
+     * Input buffer, input and output of a thread.
+     */
+    private static class Channel
+    {
+        /**
+         * Input buffer
+         */
+        private LineTokenizer ibuffer;
+        
+        /**
+         * The input read once the input buffer is empty, or null to read from the input stream
+         */
+        private BufferedReader input;
+        
+        /**
+         * The captured output, or null to print in the output stream
+         */
+        private ByteArrayOutputStream captured;
+        
+        /**
+         * The stream that prints into the captured output, or null to print in the output stream
+         */
+        private PrintStream output;
+        
+        /**
+         * Tells whether the channel prompts and asks the user for the input missing in the input buffer
+         */
+        private boolean isInteractive;
+        
+        /**
+         * The channel that was open before this one in the same thread, if any
+         */
+        private Channel previous;
+        
+        /**
+         * Creates a new non-interactive channel.
+         * @param input The input read once the input buffer is empty, or null to read from the input stream
+         * @param captured The captured output, or null to print in the output stream
+         * @param previous The channel that was open before this one in the same thread, if any
+         */
+        public Channel(BufferedReader input, ByteArrayOutputStream captured, Channel previous)
+        {
+            ibuffer = new LineTokenizer();
+            this.input = input;
+            this.captured = captured;
+            this.previous = previous;
+            isInteractive = false;
+            
+            if(captured != null)
+                output = new PrintStream(captured, false);
+        }
     }
 }
@@ -0,0 +1,53 @@
+package manticore.presentation.terminal;
+
+/**
+ * Metadata of a command action generated at compile time, together with its direct invoker.
+ * @author hector
+ */
+public class IndexedAction
+{
+    /**
+     * The name of the command action
+     */
+    private String name;
+    
+    /**
+     * The description of the command action
+     */
+    private String description;
+    
+    /**
+     * The options that the command action accepts
+     */
+    private String[] options;
+    
+    /**
+     * The invoker of the command action
+     */
+    private CommandInvoker invoker;
+    
+    /**
+     * Creates a new indexed command action.
+     * @param name The name of the command action
+     * @param description The description of the command action
+     * @param options The options that the command action accepts
+     * @param invoker The invoker of the command action
+     */
+    public IndexedAction(String name, String description, String[] options, CommandInvoker invoker)
+    {
+        this.name = name;
+        this.description = description;
+        this.options = options;
+        this.invoker = invoker;
+    }
+    
+    /**
+     * Creates the command action of the given command group that this metadata describes.
+     * @param commandGroup The command group of the command action
+     * @return The command action
+     */
+    public CommandAction bind(CommandGroup commandGroup)
+    {
+        return new CommandAction(commandGroup, name, description, options, invoker);
+    }
+}
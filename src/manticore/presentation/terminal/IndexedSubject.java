@@ -0,0 +1,99 @@
+package manticore.presentation.terminal;
+
+import java.util.ArrayList;
+import java.util.List;
+import manticore.business.BusinessController;
+
+/**
+ * Metadata of a command group generated at compile time, able to create the command group and its command
+ * actions without reflection.
+ * @author hector
+ */
+abstract public class IndexedSubject
+{
+    /**
+     * The name of the command subject
+     */
+    private String name;
+    
+    /**
+     * The description of the command subject
+     */
+    private String description;
+    
+    /**
+     * The command actions of the command group
+     */
+    private IndexedAction[] actions;
+    
+    /**
+     * Creates a new indexed command subject.
+     * @param name The name of the command subject
+     * @param description The description of the command subject
+     * @param actions The command actions of the command group
+     */
+    public IndexedSubject(String name, String description, IndexedAction[] actions)
+    {
+        this.name = name;
+        this.description = description;
+        this.actions = actions;
+    }
+    
+    /**
+     * Gets the name of the command subject.
+     * @return The name of the command subject
+     */
+    public String getName()
+    {
+        return name;
+    }
+    
+    /**
+     * Gets the description of the command subject.
+     * @return The description of the command subject
+     */
+    public String getDescription()
+    {
+        return description;
+    }
+    
+    /**
+     * Creates the command group for the given business controller, with its command actions already set.
+     * @param controller The business controller of the command group
+     * @return The command group
+     */
+    public AdvancedCommandGroup create(BusinessController controller)
+    {
+        AdvancedCommandGroup commandGroup = newCommandGroup(controller);
+        List<CommandAction> commands = new ArrayList();
+        
+        for(IndexedAction action : actions)
+            commands.add(action.bind(commandGroup));
+        
+        commandGroup.setCommands(commands);
+        
+        return commandGroup;
+    }
+    
+    /**
+     * Describes the command actions of the command group without creating it. The command actions are not
+     * bound to any command group, so they cannot be executed.
+     * @return The command actions
+     */
+    public List<CommandAction> describeCommands()
+    {
+        List<CommandAction> commands = new ArrayList();
+        
+        for(IndexedAction action : actions)
+            commands.add(action.bind(null));
+        
+        return commands;
+    }
+    
+    /**
+     * Constructs the command group for the given business controller.
+     * @param controller The business controller of the command group
+     * @return The new command group
+     */
+    abstract protected AdvancedCommandGroup newCommandGroup(BusinessController controller);
+}
@@ -0,0 +1,249 @@
+package manticore.presentation.terminal;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import manticore.Debug;
+
+/**
+ * Represents a command line run by a JobManager in its own thread.
+ * Jobs are cancelled cooperatively: the commands that take long should check regularly whether they have
+ * been cancelled and return. The thread of the job is interrupted too, so blocking calls return early.
+ * @author hector
+ */
+public class Job implements Runnable
+{
+    /**
+     * The job run by the current thread, if any
+     */
+    private static ThreadLocal<Job> current = new ThreadLocal();
+    
+    /**
+     * Identifier of the job
+     */
+    private int id;
+    
+    /**
+     * The command line of the job
+     */
+    private String command;
+    
+    /**
+     * The task that runs the command line and tells whether it has been successful
+     */
+    private Callable<Boolean> task;
+    
+    /**
+     * The future of the job in the executor
+     */
+    private volatile Future<?> future;
+    
+    /**
+     * Latch released when the job finishes
+     */
+    private CountDownLatch finished;
+    
+    /**
+     * Tells whether the job has started running
+     */
+    private volatile boolean isStarted;
+    
+    /**
+     * Tells whether the job has been cancelled
+     */
+    private volatile boolean isCancelled;
+    
+    /**
+     * Tells whether the command line has been executed successfully
+     */
+    private volatile boolean isSuccessful;
+    
+    /**
+     * Time when the job was created, in nanoseconds
+     */
+    private long startTime;
+    
+    /**
+     * Time when the job finished, in nanoseconds, or 0 if it has not finished
+     */
+    private volatile long endTime;
+    
+    /**
+     * Creates a new job.
+     * @param id Identifier of the job
+     * @param command The command line of the job
+     * @param task The task that runs the command line and tells whether it has been successful
+     */
+    public Job(int id, String command, Callable<Boolean> task)
+    {
+        this.id = id;
+        this.command = command;
+        this.task = task;
+        finished = new CountDownLatch(1);
+        isStarted = false;
+        isCancelled = false;
+        isSuccessful = false;
+        startTime = System.nanoTime();
+        endTime = 0;
+    }
+    
+    /**
+     * Returns the job run by the current thread.
+     * @return The job run by the current thread, or null if the current thread is not running a job
+     */
+    public static Job getCurrent()
+    {
+        return current.get();
+    }
+    
+    /**
+     * Tells whether the job run by the current thread has been cancelled.
+     * @return True if the current thread runs a job that has been cancelled or it has been interrupted
+     */
+    public static boolean isCurrentCancelled()
+    {
+        Job job = current.get();
+        
+        return (job != null && job.isCancelled) || Thread.currentThread().isInterrupted();
+    }
+    
+    /**
+     * Runs the command line of the job on the current thread.
+     */
+    @Override
+    public void run()
+    {
+        isStarted = true;
+        current.set(this);
+        
+        try {
+            if(! isCancelled)
+                isSuccessful = task.call();
+        }
+        catch(Exception e) {
+            if(Debug.isEnabled())
+                e.printStackTrace();
+        }
+        finally {
+            current.remove();
+            finish();
+        }
+    }
+    
+    /**
+     * Marks the job as finished.
+     */
+    private void finish()
+    {
+        endTime = System.nanoTime();
+        finished.countDown();
+    }
+    
+    /**
+     * Sets the future of the job in the executor, so the job can interrupt its thread when cancelled.
+     * @param future The future of the job
+     */
+    void setFuture(Future<?> future)
+    {
+        this.future = future;
+        
+        if(isCancelled)
+            cancel();
+    }
+    
+    /**
+     * Cancels the job and interrupts its thread.
+     */
+    public void cancel()
+    {
+        isCancelled = true;
+        
+        // A job cancelled before starting never runs, so it finishes right away
+        if(future != null && future.cancel(true) && ! isStarted)
+            finish();
+    }
+    
+    /**
+     * Waits until the job finishes.
+     * @param timeout Maximum time to wait
+     * @param unit Unit of the timeout
+     * @return True if the job has finished, false if the timeout elapsed
+     * @throws InterruptedException If interrupted while waiting
+     */
+    public boolean waitFor(long timeout, TimeUnit unit) throws InterruptedException
+    {
+        return finished.await(timeout, unit);
+    }
+    
+    /**
+     * Gets the identifier of the job.
+     * @return The identifier of the job
+     */
+    public int getId()
+    {
+        return id;
+    }
+    
+    /**
+     * Gets the command line of the job.
+     * @return The command line of the job
+     */
+    public String getCommand()
+    {
+        return command;
+    }
+    
+    /**
+     * Tells whether the job has finished.
+     * @return True if the job has finished, false otherwise
+     */
+    public boolean isDone()
+    {
+        return finished.getCount() == 0;
+    }
+    
+    /**
+     * Tells whether the job has been cancelled.
+     * @return True if the job has been cancelled, false otherwise
+     */
+    public boolean isCancelled()
+    {
+        return isCancelled;
+    }
+    
+    /**
+     * Tells whether the command line has been executed successfully.
+     * @return True if the job has finished successfully, false otherwise
+     */
+    public boolean isSuccessful()
+    {
+        return isSuccessful;
+    }
+    
+    /**
+     * Gets the time that the job has been running.
+     * @return The time since the job was created until it finished or until now, in nanoseconds
+     */
+    public long getElapsedTime()
+    {
+        long end = endTime;
+        
+        return (end == 0 ? System.nanoTime() : end) - startTime;
+    }
+    
+    /**
+     * Gets a description of the state of the job.
+     * @return Running, Done, Failed or Cancelled
+     */
+    public String getState()
+    {
+        if(isCancelled)
+            return "Cancelled";
+        
+        if(! isDone())
+            return "Running";
+        
+        return isSuccessful ? "Done" : "Failed";
+    }
+}
@@ -0,0 +1,119 @@
+package manticore.presentation.terminal;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs command lines as jobs on a pool of daemon threads and keeps track of them until they are reported.
+ * @author hector
+ */
+public class JobManager
+{
+    /**
+     * Executor that runs the jobs
+     */
+    private ExecutorService executor;
+    
+    /**
+     * Jobs that have not been reported as finished yet, identified by id
+     */
+    private ConcurrentMap<Integer, Job> jobs;
+    
+    /**
+     * Identifier of the last job created
+     */
+    private AtomicInteger lastId;
+    
+    /**
+     * Creates a new job manager.
+     */
+    public JobManager()
+    {
+        jobs = new ConcurrentSkipListMap();
+        lastId = new AtomicInteger();
+        
+        executor = Executors.newCachedThreadPool(new ThreadFactory() {
+            private AtomicInteger count = new AtomicInteger();
+            
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "manticore-job-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                
+                return thread;
+            }
+        });
+    }
+    
+    /**
+     * Submits a command line to be run as a job.
+     * @param command The command line
+     * @param task The task that runs the command line and tells whether it has been successful
+     * @return The job
+     */
+    public Job submit(String command, Callable<Boolean> task)
+    {
+        Job job = new Job(lastId.incrementAndGet(), command, task);
+        jobs.put(job.getId(), job);
+        job.setFuture(executor.submit(job));
+        
+        return job;
+    }
+    
+    /**
+     * Gets a job that has not been reported as finished yet.
+     * @param id Identifier of the job
+     * @return The job, or null if there is no such job
+     */
+    public Job getJob(int id)
+    {
+        return jobs.get(id);
+    }
+    
+    /**
+     * Gets the jobs that have not been reported as finished yet, ordered by id.
+     * @return The jobs
+     */
+    public List<Job> getJobs()
+    {
+        return new ArrayList(jobs.values());
+    }
+    
+    /**
+     * Forgets a job, once it has been reported as finished.
+     * @param job The job to forget
+     */
+    public void remove(Job job)
+    {
+        jobs.remove(job.getId());
+    }
+    
+    /**
+     * Forgets the jobs that have finished.
+     */
+    public void removeFinished()
+    {
+        for(Job job : jobs.values()) {
+            if(job.isDone())
+                jobs.remove(job.getId());
+        }
+    }
+    
+    /**
+     * Cancels all the jobs and does not accept new ones, without waiting for the jobs to finish.
+     */
+    public void cancelAll()
+    {
+        for(Job job : jobs.values())
+            job.cancel();
+        
+        executor.shutdownNow();
+    }
+}
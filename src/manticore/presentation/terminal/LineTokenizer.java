@@ -0,0 +1,364 @@
+package manticore.presentation.terminal;
+
+import java.util.regex.Pattern;
+import manticore.OptionsSchema;
+
+/**
+ * Splits a command line into tokens separated by whitespace, without regular expressions nor exceptions.
+ * A token can be quoted with double or single quotes to contain whitespace, and a backslash escapes the
+ * next character inside quotes. The typed readers must be preceded by their hasNext method, which tells
+ * whether the next token can be read as that type without consuming it.
+ *
+ * The tokenizer is reset with every line, so a single instance and its buffer are reused for all the
+ * lines read by an IOStream.
+ * @author hector
+ */
+public class LineTokenizer
+{
+    /**
+     * The prefix of the options
+     */
+    private static final String OPTION_PREFIX = "--";
+    
+    /**
+     * The line being tokenized
+     */
+    private String line;
+    
+    /**
+     * Position of the first character not consumed yet
+     */
+    private int position;
+    
+    /**
+     * Position where the next token starts, including the opening quote, or -1 if not found yet
+     */
+    private int tokenStart;
+    
+    /**
+     * Position after the end of the next token, including the closing quote
+     */
+    private int tokenEnd;
+    
+    /**
+     * Position where the content of the next token starts, without the opening quote
+     */
+    private int contentStart;
+    
+    /**
+     * Position after the end of the content of the next token, without the closing quote
+     */
+    private int contentEnd;
+    
+    /**
+     * The quote of the next token, or 0 if the token is not quoted
+     */
+    private char quote;
+    
+    /**
+     * Buffer reused to unescape the quoted tokens
+     */
+    private StringBuilder buffer;
+    
+    /**
+     * The last pattern used with hasNext(pattern), kept compiled
+     */
+    private Pattern pattern;
+    
+    /**
+     * Creates a new tokenizer of an empty line.
+     */
+    public LineTokenizer()
+    {
+        buffer = new StringBuilder();
+        reset("");
+    }
+    
+    /**
+     * Starts tokenizing the given line.
+     * @param line The line to tokenize, or null for an empty line
+     */
+    public void reset(String line)
+    {
+        this.line = line == null ? "" : line;
+        position = 0;
+        tokenStart = -1;
+    }
+    
+    /**
+     * Tells whether there are tokens left.
+     * @return True if there is one or more tokens left, false otherwise
+     */
+    public boolean hasNext()
+    {
+        return findToken();
+    }
+    
+    /**
+     * Consumes and returns the next token, without its quotes.
+     * @return The next token, or null if there are no tokens left
+     */
+    public String next()
+    {
+        if(! findToken())
+            return null;
+        
+        String token;
+        
+        if(quote == 0)
+            token = line.substring(tokenStart, tokenEnd);
+        else
+            token = unquote();
+        
+        consume();
+        
+        return token;
+    }
+    
+    /**
+     * Tells whether the next token is an integer.
+     * @return True if the next token can be read as an integer, false otherwise
+     */
+    public boolean hasNextInt()
+    {
+        if(! findToken())
+            return false;
+        
+        int start = contentStart, end = contentEnd;
+        
+        if(start < end && (line.charAt(start) == '-' || line.charAt(start) == '+'))
+            start++;
+        
+        if(start == end || end - start > 10)
+            return false;
+        
+        long value = 0;
+        
+        for(int i = start; i < end; i++) {
+            char c = line.charAt(i);
+            
+            if(c < '0' || c > '9')
+                return false;
+            
+            value = value * 10 + (c - '0');
+        }
+        
+        long limit = line.charAt(contentStart) == '-' ? -(long) Integer.MIN_VALUE : Integer.MAX_VALUE;
+        
+        return value <= limit;
+    }
+    
+    /**
+     * Consumes and returns the next token as an integer. Must be preceded by hasNextInt.
+     * @return The next token as an integer
+     */
+    public int nextInt()
+    {
+        int start = contentStart;
+        boolean isNegative = line.charAt(start) == '-';
+        
+        if(isNegative || line.charAt(start) == '+')
+            start++;
+        
+        long value = 0;
+        
+        for(int i = start; i < contentEnd; i++)
+            value = value * 10 + (line.charAt(i) - '0');
+        
+        consume();
+        
+        return (int) (isNegative ? -value : value);
+    }
+    
+    /**
+     * Tells whether the next token is a decimal number. Both the dot and the comma are accepted as decimal
+     * separator.
+     * @return True if the next token can be read as a float, false otherwise
+     */
+    public boolean hasNextFloat()
+    {
+        if(! findToken())
+            return false;
+        
+        int start = contentStart, end = contentEnd;
+        boolean hasDigits = false, hasSeparator = false, hasExponent = false;
+        
+        for(int i = start; i < end; i++) {
+            char c = line.charAt(i);
+            
+            if(c >= '0' && c <= '9')
+                hasDigits = true;
+            else if((c == '-' || c == '+') && (i == start || line.charAt(i - 1) == 'e' ||
+                    line.charAt(i - 1) == 'E'))
+                continue;
+            else if((c == '.' || c == ',') && ! hasSeparator && ! hasExponent)
+                hasSeparator = true;
+            else if((c == 'e' || c == 'E') && hasDigits && ! hasExponent && i + 1 < end) {
+                hasExponent = true;
+                hasDigits = false;
+            }
+            else
+                return false;
+        }
+        
+        return hasDigits;
+    }
+    
+    /**
+     * Consumes and returns the next token as a float. Must be preceded by hasNextFloat.
+     * @return The next token as a float
+     */
+    public float nextFloat()
+    {
+        String token = line.substring(contentStart, contentEnd).replace(',', '.');
+        consume();
+        
+        return Float.parseFloat(token);
+    }
+    
+    /**
+     * Tells whether the next token is an option, that is, two dashes followed by lowercase letters.
+     * @return True if the next token is an option, false otherwise
+     */
+    public boolean hasNextOption()
+    {
+        if(! findToken() || quote != 0 || ! line.startsWith(OPTION_PREFIX, tokenStart))
+            return false;
+        
+        int start = tokenStart + OPTION_PREFIX.length();
+        
+        if(start == tokenEnd)
+            return false;
+        
+        for(int i = start; i < tokenEnd; i++) {
+            char c = line.charAt(i);
+            
+            if(c < 'a' || c > 'z')
+                return false;
+        }
+        
+        return true;
+    }
+    
+    /**
+     * Consumes the next token and returns it as an option name, without the dashes. Must be preceded by
+     * hasNextOption.
+     * @return The name of the option
+     */
+    public String nextOption()
+    {
+        String option = line.substring(tokenStart + OPTION_PREFIX.length(), tokenEnd);
+        consume();
+        
+        return option;
+    }
+    
+    /**
+     * Consumes the next token if it is an option of the given schema, and returns its index without
+     * extracting its name. Must be preceded by hasNextOption.
+     * @param schema The options of the command
+     * @return The index of the option in the schema, or -1 if it is not in the schema, in which case the
+     * token is not consumed
+     */
+    public int nextOption(OptionsSchema schema)
+    {
+        int index = schema.indexOf(line, tokenStart + OPTION_PREFIX.length(), tokenEnd);
+        
+        if(index >= 0)
+            consume();
+        
+        return index;
+    }
+    
+    /**
+     * Tells whether the next token matches the given regular expression.
+     * Kept for compatibility, the typed hasNext methods do not need regular expressions.
+     * @param regex The regular expression
+     * @return True if the next token matches the regular expression, false otherwise
+     */
+    public boolean hasNext(String regex)
+    {
+        if(! findToken())
+            return false;
+        
+        if(pattern == null || ! pattern.pattern().equals(regex))
+            pattern = Pattern.compile(regex);
+        
+        return pattern.matcher(line.substring(contentStart, contentEnd)).matches();
+    }
+    
+    /**
+     * Finds the bounds of the next token, if they have not been found yet.
+     * @return True if there is a next token, false otherwise
+     */
+    private boolean findToken()
+    {
+        if(tokenStart >= 0)
+            return true;
+        
+        int length = line.length();
+        
+        while(position < length && Character.isWhitespace(line.charAt(position)))
+            position++;
+        
+        if(position == length)
+            return false;
+        
+        tokenStart = position;
+        char c = line.charAt(position);
+        
+        if(c == '"' || c == '\'') {
+            quote = c;
+            int i = position + 1;
+            
+            while(i < length && line.charAt(i) != quote)
+                i += line.charAt(i) == '\\' ? 2 : 1;
+            
+            contentStart = position + 1;
+            contentEnd = Math.min(i, length);
+            tokenEnd = Math.min(i + 1, length);
+        }
+        else {
+            quote = 0;
+            int i = position;
+            
+            while(i < length && ! Character.isWhitespace(line.charAt(i)))
+                i++;
+            
+            contentStart = position;
+            contentEnd = i;
+            tokenEnd = i;
+        }
+        
+        return true;
+    }
+    
+    /**
+     * Returns the content of the next token, which is quoted, with the escaped characters unescaped.
+     * @return The content of the next token
+     */
+    private String unquote()
+    {
+        buffer.setLength(0);
+        
+        for(int i = contentStart; i < contentEnd; i++) {
+            char c = line.charAt(i);
+            
+            if(c == '\\' && i + 1 < contentEnd)
+                c = line.charAt(++i);
+            
+            buffer.append(c);
+        }
+        
+        return buffer.toString();
+    }
+    
+    /**
+     * Consumes the next token.
+     */
+    private void consume()
+    {
+        position = tokenEnd;
+        tokenStart = -1;
+    }
+}
@@ -0,0 +1,67 @@
+package manticore.presentation.terminal;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import manticore.Debug;
+import manticore.Options;
+
+/**
+ * Invokes the method of a command action using reflection, with everything that can be resolved beforehand
+ * resolved when the command group is scanned: whether the method takes the options, and the access checks.
+ * Used for the command groups that have not been indexed at compile time.
+ * @author hector
+ */
+class ReflectiveInvoker implements CommandInvoker
+{
+    /**
+     * Arguments used to invoke the methods that take no parameters
+     */
+    private static final Object[] NO_ARGUMENTS = new Object[0];
+    
+    /**
+     * The method of the command action
+     */
+    private Method method;
+    
+    /**
+     * Tells whether the method takes the options as parameter
+     */
+    private boolean takesOptions;
+    
+    /**
+     * Creates a new reflective invoker of the given method.
+     * @param method The method of the command action
+     */
+    public ReflectiveInvoker(Method method)
+    {
+        this.method = method;
+        takesOptions = method.getParameterTypes().length == 1;
+        
+        try {
+            method.setAccessible(true);
+        }
+        catch(SecurityException e) {
+            Debug.println("Access checks cannot be suppressed for command " + method.getName() + ".");
+        }
+    }
+    
+    /**
+     * Invokes the method on the given command group, rethrowing the exception thrown by the method itself.
+     * @param commandGroup The command group of the command action
+     * @param options Options that should be used in the execution of the command
+     * @throws Throwable Any exception thrown by the command action
+     */
+    @Override
+    public void invoke(CommandGroup commandGroup, Options options) throws Throwable
+    {
+        try {
+            if(takesOptions)
+                method.invoke(commandGroup, options);
+            else
+                method.invoke(commandGroup, NO_ARGUMENTS);
+        }
+        catch(InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+}
@@ -0,0 +1,386 @@
+package manticore.presentation.terminal.processor;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+
+/**
+ * Annotation processor that generates, for every package with command groups, a CommandIndex class with
+ * the metadata of its CommandSubject, Command and CommandOptions annotations and direct invokers for the
+ * command actions. The TerminalController uses this index, when present, instead of reflection.
+ * 
+ * The processor is registered as a service, so it runs automatically whenever manticore is in the
+ * classpath of javac and annotation processing is enabled.
+ * 
+ * The annotations are referenced by name, so the processor can be compiled on its own before the rest of
+ * the sources.
+ * 
+ * The index of a package only has the command groups compiled together, so an incremental compilation that
+ * recompiles some of them writes an index without the others. The terminal reports the command groups that
+ * are missing from the index and uses reflection for them; a clean build restores the complete index.
+ * @author hector
+ */
+@SupportedAnnotationTypes(CommandIndexProcessor.SUBJECT)
+public class CommandIndexProcessor extends AbstractProcessor
+{
+    /**
+     * Name of the CommandSubject annotation
+     */
+    static final String SUBJECT = "manticore.presentation.terminal.annotation.CommandSubject";
+    
+    /**
+     * Name of the Command annotation
+     */
+    private static final String COMMAND = "manticore.presentation.terminal.annotation.Command";
+    
+    /**
+     * Name of the CommandOptions annotation
+     */
+    private static final String OPTIONS = "manticore.presentation.terminal.annotation.CommandOptions";
+    
+    /**
+     * Package of the terminal classes used by the generated code
+     */
+    private static final String TERMINAL = "manticore.presentation.terminal.";
+    
+    /**
+     * Simple name of the generated index class
+     */
+    private static final String INDEX_CLASS = "CommandIndex";
+    
+    /**
+     * Packages already indexed
+     */
+    private Set<String> indexed = new HashSet();
+    
+    /**
+     * Supports the latest source version, the processor only reads annotations.
+     * @return The latest supported source version
+     */
+    @Override
+    public SourceVersion getSupportedSourceVersion()
+    {
+        return SourceVersion.latestSupported();
+    }
+    
+    /**
+     * Generates the command index of every package with command groups found in the round.
+     * @param annotations The annotations requested in the round
+     * @param roundEnv The environment of the round
+     * @return False, the annotations are not claimed
+     */
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv)
+    {
+        TypeElement subject = processingEnv.getElementUtils().getTypeElement(SUBJECT);
+        
+        if(subject == null)
+            return false;
+        
+        Map<String, List<TypeElement>> groups = new TreeMap();
+        
+        for(Element element : roundEnv.getElementsAnnotatedWith(subject)) {
+            if(element.getKind() != ElementKind.CLASS)
+                continue;
+            
+            if(element.getEnclosingElement().getKind() != ElementKind.PACKAGE)
+                continue;
+            
+            String pkg = processingEnv.getElementUtils().getPackageOf(element).getQualifiedName().toString();
+            
+            if(! groups.containsKey(pkg))
+                groups.put(pkg, new ArrayList());
+            
+            groups.get(pkg).add((TypeElement) element);
+        }
+        
+        for(Map.Entry<String, List<TypeElement>> entry : groups.entrySet()) {
+            if(! indexed.add(entry.getKey())) {
+                warn("Package " + entry.getKey() + " already indexed, its new groups use reflection.", null);
+                continue;
+            }
+            
+            try {
+                writeIndex(entry.getKey(), entry.getValue());
+            }
+            catch(IOException e) {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                        "Unable to write the command index of " + entry.getKey() + ": " + e.getMessage());
+            }
+        }
+        
+        return false;
+    }
+    
+    /**
+     * Writes the command index of a package.
+     * @param pkg Name of the package
+     * @param groups The command groups of the package
+     * @throws IOException If the source file cannot be written
+     */
+    private void writeIndex(String pkg, List<TypeElement> groups) throws IOException
+    {
+        String className = pkg.isEmpty() ? INDEX_CLASS : pkg + "." + INDEX_CLASS;
+        TypeElement[] origins = groups.toArray(new TypeElement[groups.size()]);
+        PrintWriter out = new PrintWriter(processingEnv.getFiler().createSourceFile(className, origins)
+                .openWriter());
+        
+        try {
+            if(! pkg.isEmpty())
+                out.println("package " + pkg + ";\n");
+            
+            out.println("/**");
+            out.println(" * Command index generated by " + getClass().getName() + ".");
+            out.println(" */");
+            out.println("public final class " + INDEX_CLASS + " implements " + TERMINAL + "CommandRegistry");
+            out.println("{");
+            out.println("    public " + TERMINAL + "IndexedSubject getSubject(String groupName)");
+            out.println("    {");
+            
+            for(TypeElement group : groups) {
+                String constructor = getControllerType(group);
+                
+                if(constructor == null) {
+                    warn("Command group without a single-arg public constructor, it uses reflection.", group);
+                    continue;
+                }
+                
+                writeSubject(out, group, constructor);
+            }
+            
+            out.println("        return null;");
+            out.println("    }");
+            out.println("}");
+        }
+        finally {
+            out.close();
+        }
+    }
+    
+    /**
+     * Writes the statement that returns the indexed subject of a command group.
+     * @param out Writer of the index
+     * @param group The command group
+     * @param controllerType Name of the business controller type of the command group constructor
+     */
+    private void writeSubject(PrintWriter out, TypeElement group, String controllerType)
+    {
+        String groupType = group.getQualifiedName().toString();
+        Map<String, Object> subject = getValues(group, SUBJECT);
+        
+        out.println("        if(groupName.equals(" + literal(group.getSimpleName().toString()) + "))");
+        out.println("            return new " + TERMINAL + "IndexedSubject(" + literal(subject.get("name"))
+                + ", " + literal(subject.get("description")) + ", new " + TERMINAL + "IndexedAction[] {");
+        
+        for(ExecutableElement method : getCommands(group).values()) {
+            String name = method.getSimpleName().toString();
+            List<String> options = getOptions(method);
+            boolean hasOptions = ! method.getParameters().isEmpty();
+            
+            out.println("                new " + TERMINAL + "IndexedAction(" + literal(name.startsWith("_") ?
+                    name.substring(1) : name) + ", " + literal(getValues(method, COMMAND).get("value")) + ",");
+            out.print("                        new String[] {");
+            
+            for(int i = 0; i < options.size(); ++i)
+                out.print((i == 0 ? "" : ", ") + literal(options.get(i)));
+            
+            out.println("}, new " + TERMINAL + "CommandInvoker() {");
+            out.println("                    public void invoke(" + TERMINAL + "CommandGroup group, "
+                    + "manticore.Options options) throws Throwable {");
+            out.println("                        ((" + groupType + ") group)." + name + "("
+                    + (hasOptions ? "options" : "") + ");");
+            out.println("                    }");
+            out.println("                }),");
+        }
+        
+        out.println("            }) {");
+        out.println("                protected " + TERMINAL + "AdvancedCommandGroup newCommandGroup("
+                + "manticore.business.BusinessController controller) {");
+        out.println("                    return new " + groupType + "((" + controllerType + ") controller);");
+        out.println("                }");
+        out.println("            };");
+        out.println();
+    }
+    
+    /**
+     * Returns the public command actions of a command group, including the inherited ones.
+     * As with reflection, a method is a command action only if its most derived declaration is annotated,
+     * so an inherited command overridden without the Command annotation is not a command action.
+     * @param group The command group
+     * @return The methods of the command actions identified by name
+     */
+    private Map<String, ExecutableElement> getCommands(TypeElement group)
+    {
+        Map<String, ExecutableElement> commands = new LinkedHashMap();
+        List<ExecutableElement> declared = new ArrayList();
+        TypeElement type = group;
+        
+        while(type != null) {
+            for(ExecutableElement method : ElementFilter.methodsIn(type.getEnclosedElements())) {
+                String name = method.getSimpleName().toString();
+                
+                if(! method.getModifiers().contains(Modifier.PUBLIC) || method.getModifiers().contains(
+                        Modifier.STATIC) || isOverridden(method, declared, group))
+                    continue;
+                
+                declared.add(method);
+                
+                if(getMirror(method, COMMAND) != null && ! commands.containsKey(name))
+                    commands.put(name, method);
+            }
+            
+            TypeMirror superclass = type.getSuperclass();
+            type = superclass.getKind() == TypeKind.DECLARED ?
+                    (TypeElement) ((DeclaredType) superclass).asElement() : null;
+        }
+        
+        return commands;
+    }
+    
+    /**
+     * Tells whether a method is overridden by one of the methods declared by the subclasses of its type.
+     * @param method The method
+     * @param declared The public methods declared by the subclasses of the type of the method
+     * @param group The command group whose methods are checked
+     * @return True if the method is overridden, false otherwise
+     */
+    private boolean isOverridden(ExecutableElement method, List<ExecutableElement> declared, TypeElement group)
+    {
+        for(ExecutableElement overrider : declared) {
+            if(overrider.getSimpleName().equals(method.getSimpleName()) &&
+                    processingEnv.getElementUtils().overrides(overrider, method, group))
+                return true;
+        }
+        
+        return false;
+    }
+    
+    /**
+     * Returns the type of the business controller received by the public constructor of a command group.
+     * @param group The command group
+     * @return The qualified name of the business controller type, or null if there is no such constructor
+     */
+    private String getControllerType(TypeElement group)
+    {
+        if(group.getModifiers().contains(Modifier.ABSTRACT))
+            return null;
+        
+        for(ExecutableElement constructor : ElementFilter.constructorsIn(group.getEnclosedElements())) {
+            if(constructor.getModifiers().contains(Modifier.PUBLIC) && constructor.getParameters().size() == 1)
+                return processingEnv.getTypeUtils().erasure(constructor.getParameters().get(0).asType())
+                        .toString();
+        }
+        
+        return null;
+    }
+    
+    /**
+     * Returns the options declared by the CommandOptions annotation of a method.
+     * @param method The method
+     * @return The declared options, empty if there is no annotation
+     */
+    private List<String> getOptions(ExecutableElement method)
+    {
+        List<String> options = new ArrayList();
+        
+        if(getMirror(method, OPTIONS) == null)
+            return options;
+        
+        for(Object value : (List<?>) getValues(method, OPTIONS).get("value"))
+            options.add((String) ((AnnotationValue) value).getValue());
+        
+        return options;
+    }
+    
+    /**
+     * Returns the values of an annotation of an element, including the default ones.
+     * @param element The annotated element
+     * @param annotation Name of the annotation
+     * @return The values identified by name
+     */
+    private Map<String, Object> getValues(Element element, String annotation)
+    {
+        Map<String, Object> values = new LinkedHashMap();
+        AnnotationMirror mirror = getMirror(element, annotation);
+        
+        for(Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry :
+                processingEnv.getElementUtils().getElementValuesWithDefaults(mirror).entrySet())
+            values.put(entry.getKey().getSimpleName().toString(), entry.getValue().getValue());
+        
+        return values;
+    }
+    
+    /**
+     * Returns an annotation of an element given its name.
+     * @param element The element
+     * @param annotation Name of the annotation
+     * @return The annotation mirror, or null if the element is not annotated
+     */
+    private AnnotationMirror getMirror(Element element, String annotation)
+    {
+        for(AnnotationMirror mirror : element.getAnnotationMirrors()) {
+            TypeElement type = (TypeElement) mirror.getAnnotationType().asElement();
+            
+            if(type.getQualifiedName().contentEquals(annotation))
+                return mirror;
+        }
+        
+        return null;
+    }
+    
+    /**
+     * Returns a Java string literal for the given value.
+     * @param value The value
+     * @return The string literal
+     */
+    private static String literal(Object value)
+    {
+        String s = String.valueOf(value);
+        StringBuilder literal = new StringBuilder("\"");
+        
+        for(char c : s.toCharArray()) {
+            switch(c) {
+                case '"': literal.append("\\\""); break;
+                case '\\': literal.append("\\\\"); break;
+                case '\n': literal.append("\\n"); break;
+                case '\r': literal.append("\\r"); break;
+                case '\t': literal.append("\\t"); break;
+                default: literal.append(c);
+            }
+        }
+        
+        return literal.append('"').toString();
+    }
+    
+    /**
+     * Prints a warning.
+     * @param message The warning
+     * @param element The element related to the warning, or null
+     */
+    private void warn(String message, Element element)
+    {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING, message, element);
+    }
+}
@@ -0,0 +1,205 @@
+package manticore.presentation.terminal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the edge cases of the LineTokenizer.
+ * @author hector
+ */
+public class LineTokenizerTest
+{
+    /**
+     * The tokenizer tested
+     */
+    private LineTokenizer tokenizer;
+    
+    /**
+     * Creates the tokenizer tested.
+     */
+    @Before
+    public void setUp()
+    {
+        tokenizer = new LineTokenizer();
+    }
+    
+    /**
+     * Tests that any whitespace separates the tokens.
+     */
+    @Test
+    public void splitsTokensSeparatedByWhitespace()
+    {
+        tokenizer.reset("  show\tpost  1 ");
+        
+        assertEquals("show", tokenizer.next());
+        assertEquals("post", tokenizer.next());
+        assertEquals("1", tokenizer.next());
+        assertFalse(tokenizer.hasNext());
+        assertNull(tokenizer.next());
+    }
+    
+    /**
+     * Tests that integers can have a sign.
+     */
+    @Test
+    public void readsSignedIntegers()
+    {
+        tokenizer.reset("+5 -7 0");
+        
+        assertTrue(tokenizer.hasNextInt());
+        assertEquals(5, tokenizer.nextInt());
+        assertTrue(tokenizer.hasNextInt());
+        assertEquals(-7, tokenizer.nextInt());
+        assertTrue(tokenizer.hasNextInt());
+        assertEquals(0, tokenizer.nextInt());
+    }
+    
+    /**
+     * Tests that a sign alone or out of place is not an integer.
+     */
+    @Test
+    public void rejectsSignsWithoutDigits()
+    {
+        tokenizer.reset("- + +-1 1-");
+        
+        for(int i = 0; i < 4; i++) {
+            assertFalse(tokenizer.hasNextInt());
+            tokenizer.next();
+        }
+    }
+    
+    /**
+     * Tests that the minimum and maximum integers are read without overflowing.
+     */
+    @Test
+    public void readsTheLimitsOfAnInteger()
+    {
+        tokenizer.reset("-2147483648 2147483647 +2147483647");
+        
+        assertTrue(tokenizer.hasNextInt());
+        assertEquals(Integer.MIN_VALUE, tokenizer.nextInt());
+        assertTrue(tokenizer.hasNextInt());
+        assertEquals(Integer.MAX_VALUE, tokenizer.nextInt());
+        assertTrue(tokenizer.hasNextInt());
+        assertEquals(Integer.MAX_VALUE, tokenizer.nextInt());
+    }
+    
+    /**
+     * Tests that the numbers that overflow an integer are not integers.
+     */
+    @Test
+    public void rejectsIntegersOutOfRange()
+    {
+        tokenizer.reset("2147483648 -2147483649 99999999999");
+        
+        for(int i = 0; i < 3; i++) {
+            assertFalse(tokenizer.hasNextInt());
+            tokenizer.next();
+        }
+    }
+    
+    /**
+     * Tests that quoted tokens keep their whitespace and unescape their quotes.
+     */
+    @Test
+    public void readsQuotedTokens()
+    {
+        tokenizer.reset("\"hello world\" 'it''s' \"say \\\"hi\\\"\"");
+        
+        assertEquals("hello world", tokenizer.next());
+        assertEquals("it", tokenizer.next());
+        assertEquals("s", tokenizer.next());
+        assertEquals("say \"hi\"", tokenizer.next());
+        assertFalse(tokenizer.hasNext());
+    }
+    
+    /**
+     * Tests that a quote that is not closed extends to the end of the line.
+     */
+    @Test
+    public void readsUnterminatedQuotesUntilTheEndOfTheLine()
+    {
+        tokenizer.reset("post \"hello world");
+        
+        assertEquals("post", tokenizer.next());
+        assertEquals("hello world", tokenizer.next());
+        assertFalse(tokenizer.hasNext());
+    }
+    
+    /**
+     * Tests that a backslash at the end of a token, quoted or not, is kept.
+     */
+    @Test
+    public void keepsTrailingBackslashes()
+    {
+        tokenizer.reset("path\\ \"quoted\\");
+        
+        assertEquals("path\\", tokenizer.next());
+        assertEquals("quoted\\", tokenizer.next());
+        assertFalse(tokenizer.hasNext());
+    }
+    
+    /**
+     * Tests that a quoted number is read as an integer.
+     */
+    @Test
+    public void readsQuotedIntegers()
+    {
+        tokenizer.reset("\"42\"");
+        
+        assertTrue(tokenizer.hasNextInt());
+        assertEquals(42, tokenizer.nextInt());
+    }
+    
+    /**
+     * Tests that the comma is always a decimal separator, so 1,000 is one and not a thousand.
+     */
+    @Test
+    public void acceptsTheCommaAsDecimalSeparator()
+    {
+        tokenizer.reset("1,000 1.5 -2,5e3");
+        
+        assertFalse(tokenizer.hasNextInt());
+        assertTrue(tokenizer.hasNextFloat());
+        assertEquals(1.0f, tokenizer.nextFloat(), 0);
+        assertTrue(tokenizer.hasNextFloat());
+        assertEquals(1.5f, tokenizer.nextFloat(), 0);
+        assertTrue(tokenizer.hasNextFloat());
+        assertEquals(-2500f, tokenizer.nextFloat(), 0);
+    }
+    
+    /**
+     * Tests that several separators, or an exponent without digits, are not floats.
+     */
+    @Test
+    public void rejectsMalformedFloats()
+    {
+        tokenizer.reset("1,000,000 1.5e . e5 1e+");
+        
+        for(int i = 0; i < 5; i++) {
+            assertFalse(tokenizer.hasNextFloat());
+            tokenizer.next();
+        }
+    }
+    
+    /**
+     * Tests that only unquoted lowercase words after two dashes are options.
+     */
+    @Test
+    public void readsOptions()
+    {
+        tokenizer.reset("--all -- --All \"--all\"");
+        
+        assertTrue(tokenizer.hasNextOption());
+        assertEquals("all", tokenizer.nextOption());
+        
+        for(int i = 0; i < 3; i++) {
+            assertFalse(tokenizer.hasNextOption());
+            tokenizer.next();
+        }
+    }
+}